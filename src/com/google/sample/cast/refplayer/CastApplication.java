@@ -26,6 +26,7 @@ import com.google.android.libraries.cast.companionlibrary.cast.exceptions.NoConn
 import com.google.android.libraries.cast.companionlibrary.cast.exceptions.TransientNetworkDisconnectionException;
 
 import android.app.Application;
+import android.content.ComponentCallbacks2;
 
 import java.util.Locale;
 
@@ -37,6 +38,8 @@ public class CastApplication extends Application {
     public static final double VOLUME_INCREMENT = 0.05;
     public static final int PRELOAD_TIME_S = 20;
 
+    private MemoryTrimPolicy mTrimPolicy;
+
     /*
      * (non-Javadoc)
      * @see android.app.Application#onCreate()
@@ -63,6 +66,24 @@ public class CastApplication extends Application {
                 .setForwardStep(10)
                 .build();
         VideoCastManager.initialize(this, options);
+        mTrimPolicy = new MemoryTrimPolicy();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mTrimPolicy.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        // only delivered before API 14, or when even the background processes are gone
+        mTrimPolicy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    public MemoryTrimPolicy getTrimPolicy() {
+        return mTrimPolicy;
     }
 
     /**
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer;
+
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+
+import com.google.sample.cast.refplayer.browser.CatalogStore;
+import com.google.sample.cast.refplayer.images.ImageLoader;
+import com.google.sample.cast.refplayer.utils.LogUtils;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decides what the application gives back when the system asks it to trim its memory. Releases
+ * are tiered by how severe the request is:
+ * <ol>
+ * <li>decoded bitmaps: half of the memory cache and all of the bitmap pool on a moderate request,
+ * the whole cache from {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} or
+ * {@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND} on;</li>
+ * <li>the catalog rows materialized from a mapped snapshot for the browser, from
+ * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} or
+ * {@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN} on: the browser reads the snapshot itself
+ * instead;</li>
+ * <li>the catalog entries held in memory, at
+ * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} or from
+ * {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE} on: the catalog is swapped for its
+ * memory-mapped snapshot, in the store and in every holder of its entries.</li>
+ * </ol>
+ * What was released is counted per trim level, see {@link #getStats()}.
+ */
+public class MemoryTrimPolicy {
+
+    private static final String TAG = "MemoryTrimPolicy";
+    private static final float MODERATE_IMAGE_FRACTION = 0.5f;
+
+    // guarded by itself
+    private final Map<Integer, LevelStats> mStats = new TreeMap<>();
+
+    /**
+     * Applies the policy for {@code level}, one of the {@code TRIM_MEMORY_*} levels of
+     * {@link ComponentCallbacks2}.
+     */
+    public void onTrimMemory(int level) {
+        boolean severe = level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        // a loader that was never created holds nothing, and creating it would take memory
+        ImageLoader loader = ImageLoader.peekInstance();
+        long imageBytes = loader == null ? 0
+                : loader.trimMemory(severe ? 0f : MODERATE_IMAGE_FRACTION);
+
+        int rows = 0;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            rows = CatalogStore.releaseMaterialized();
+        }
+
+        int shrunk = 0;
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            shrunk = CatalogStore.shrinkToSnapshot();
+        }
+
+        LevelStats stats;
+        synchronized (mStats) {
+            stats = mStats.get(level);
+            if (stats == null) {
+                stats = new LevelStats(level);
+                mStats.put(level, stats);
+            }
+            stats.add(imageBytes, rows, shrunk);
+        }
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "Trimmed memory at level " + level + ": " + imageBytes + " image bytes, "
+                    + rows + " materialized rows, " + shrunk + " catalog entries mapped");
+        }
+    }
+
+    /**
+     * Returns what has been released so far, by trim level.
+     */
+    public LevelStats[] getStats() {
+        synchronized (mStats) {
+            LevelStats[] stats = new LevelStats[mStats.size()];
+            int i = 0;
+            for (LevelStats level : mStats.values()) {
+                stats[i++] = new LevelStats(level);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * What was released at one trim level, summed over every time the policy was applied at it.
+     */
+    public static class LevelStats {
+
+        private final int mLevel;
+        private int mTrimCount;
+        private long mImageBytes;
+        private int mReleasedRows;
+        private int mShrunkEntries;
+
+        LevelStats(int level) {
+            mLevel = level;
+        }
+
+        LevelStats(LevelStats other) {
+            mLevel = other.mLevel;
+            mTrimCount = other.mTrimCount;
+            mImageBytes = other.mImageBytes;
+            mReleasedRows = other.mReleasedRows;
+            mShrunkEntries = other.mShrunkEntries;
+        }
+
+        void add(long imageBytes, int releasedRows, int shrunkEntries) {
+            mTrimCount++;
+            mImageBytes += imageBytes;
+            mReleasedRows += releasedRows;
+            mShrunkEntries += shrunkEntries;
+        }
+
+        public int getLevel() {
+            return mLevel;
+        }
+
+        public int getTrimCount() {
+            return mTrimCount;
+        }
+
+        /**
+         * Returns the number of bytes of decoded images released from the caches.
+         */
+        public long getImageBytes() {
+            return mImageBytes;
+        }
+
+        /**
+         * Returns the number of catalog rows materialized from a mapped snapshot that were
+         * released.
+         */
+        public int getReleasedRows() {
+            return mReleasedRows;
+        }
+
+        /**
+         * Returns the number of catalog entries held in memory that were swapped for the mapped
+         * snapshot.
+         */
+        public int getShrunkEntries() {
+            return mShrunkEntries;
+        }
+
+        @Override
+        public String toString() {
+            return "level " + mLevel + ": " + mTrimCount + " trims, " + mImageBytes
+                    + " image bytes, " + mReleasedRows + " materialized rows, " + mShrunkEntries
+                    + " entries mapped";
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.google.sample.cast.refplayer;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGE;
+
 import com.google.android.gms.cast.ApplicationMetadata;
 import com.google.android.libraries.cast.companionlibrary.cast.VideoCastManager;
 import com.google.android.libraries.cast.companionlibrary.cast.callbacks.VideoCastConsumer;
@@ -23,6 +26,7 @@ import com.google.android.libraries.cast.companionlibrary.cast.callbacks.VideoCa
 import com.google.android.libraries.cast.companionlibrary.widgets.IntroductoryOverlay;
 import com.google.sample.cast.refplayer.queue.ui.QueueListViewActivity;
 import com.google.sample.cast.refplayer.settings.CastPreference;
+import com.google.sample.cast.refplayer.utils.LogUtils;
 
 import android.annotation.TargetApi;
 import android.content.Intent;
@@ -32,7 +36,6 @@ import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
-import android.util.Log;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -66,7 +69,7 @@ public class VideoBrowserActivity extends AppCompatActivity {
                 if (resourceId > 0) {
                     reason = getString(resourceId);
                 }
-                Log.e(TAG, "Action failed, reason:  " + reason + ", status code: " + statusCode);
+                LOGE(TAG, "Action failed, reason:  " + reason + ", status code: " + statusCode);
             }
 
             @Override
@@ -82,7 +85,9 @@ public class VideoBrowserActivity extends AppCompatActivity {
 
             @Override
             public void onConnectionSuspended(int cause) {
-                Log.d(TAG, "onConnectionSuspended() was called with cause: " + cause);
+                if (LogUtils.DEBUG) {
+                    LOGD(TAG, "onConnectionSuspended() was called with cause: " + cause);
+                }
                 com.google.sample.cast.refplayer.utils.Utils.
                         showToast(VideoBrowserActivity.this, R.string.connection_temp_lost);
             }
@@ -159,7 +164,7 @@ public class VideoBrowserActivity extends AppCompatActivity {
                             .setOnDismissed(new IntroductoryOverlay.OnOverlayDismissedListener() {
                                 @Override
                                 public void onOverlayDismissed() {
-                                    Log.d(TAG, "overlay is dismissed");
+                                    LOGD(TAG, "overlay is dismissed");
                                     mOverlay = null;
                                 }
                             })
@@ -178,7 +183,7 @@ public class VideoBrowserActivity extends AppCompatActivity {
 
     @Override
     protected void onResume() {
-        Log.d(TAG, "onResume() was called");
+        LOGD(TAG, "onResume() was called");
         mCastManager = VideoCastManager.getInstance();
         if (null != mCastManager) {
             mCastManager.addVideoCastConsumer(mCastConsumer);
@@ -197,7 +202,7 @@ public class VideoBrowserActivity extends AppCompatActivity {
 
     @Override
     protected void onDestroy() {
-        Log.d(TAG, "onDestroy is called");
+        LOGD(TAG, "onDestroy is called");
         super.onDestroy();
     }
 
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGW;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Properties;
+
+/**
+ * A disk cache for the catalog document. Alongside the raw response it keeps the {@code ETag} and
+ * {@code Last-Modified} validators of the server, so that a refresh can be sent as a conditional
+ * request and a {@code 304 Not Modified} answer can be served from the cached copy.
+ */
+public class CatalogCache {
+
+    private static final String TAG = "CatalogCache";
+    private static final String CACHE_DIR = "catalog";
+    private static final String CATALOG_FILE = "catalog.json";
+    private static final String META_FILE = "catalog.meta";
+    private static final String SNAPSHOT_FILE = "catalog.snapshot";
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final File mDir;
+    private final File mCatalogFile;
+    private final File mMetaFile;
+    private final File mSnapshotFile;
+
+    /**
+     * Reads a catalog document while it is being downloaded.
+     */
+    public interface CatalogReader {
+
+        void read(InputStream in) throws IOException;
+    }
+
+    public CatalogCache(Context context) {
+        mDir = new File(context.getCacheDir(), CACHE_DIR);
+        mCatalogFile = new File(mDir, CATALOG_FILE);
+        mMetaFile = new File(mDir, META_FILE);
+        mSnapshotFile = new File(mDir, SNAPSHOT_FILE);
+    }
+
+    /**
+     * Returns {@code true} if a previously downloaded copy of the catalog for {@code url} is
+     * available on disk.
+     */
+    public boolean hasCachedCopy(String url) {
+        return mCatalogFile.exists() && url.equals(loadMeta().getProperty(KEY_URL));
+    }
+
+    /**
+     * Opens the cached copy of the catalog. Callers are responsible for closing the stream.
+     */
+    public InputStream openCachedCopy() throws IOException {
+        return new BufferedInputStream(new FileInputStream(mCatalogFile), BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the file that holds the binary {@link CatalogSnapshot} of the cached copy. The
+     * snapshot is deleted whenever the cached copy is replaced, so it never outlives the document
+     * it was built from.
+     */
+    public File getSnapshotFile(String url) {
+        if (!hasCachedCopy(url)) {
+            mSnapshotFile.delete();
+        }
+        return mSnapshotFile;
+    }
+
+    /**
+     * Deletes the cached copy, its snapshot and its validators, so that the next
+     * {@link #refresh(String)} is sent as an unconditional request. To be called when the cached
+     * copy turns out to be unusable, which the server cannot know about.
+     */
+    public void invalidate() {
+        mMetaFile.delete();
+        mCatalogFile.delete();
+        mSnapshotFile.delete();
+    }
+
+    /**
+     * Revalidates the cached copy against the server. If the server reports that the catalog has
+     * not changed, the cached copy is left untouched and {@code false} is returned; otherwise the
+     * new document and its validators replace the cached ones and {@code true} is returned.
+     */
+    public boolean refresh(String url) throws IOException {
+        return refresh(url, null);
+    }
+
+    /**
+     * Same as {@link #refresh(String)}, but if a new document is downloaded it is also handed to
+     * {@code reader} as it arrives, so that it can be parsed without waiting for the last byte.
+     * The cached copy is only replaced once the download is complete.
+     */
+    public boolean refresh(String url, CatalogReader reader) throws IOException {
+        Properties meta = loadMeta();
+        HttpURLConnection connection = CatalogTransport.openConnection(url);
+        try {
+            if (hasCachedCopy(url)) {
+                String etag = meta.getProperty(KEY_ETAG);
+                String lastModified = meta.getProperty(KEY_LAST_MODIFIED);
+                if (etag != null) {
+                    connection.setRequestProperty("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", lastModified);
+                }
+            }
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                LOGD(TAG, "Catalog has not been modified, using the cached copy");
+                return false;
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response code: " + responseCode);
+            }
+            writeCatalog(CatalogTransport.getBody(connection), reader);
+            Properties newMeta = new Properties();
+            newMeta.setProperty(KEY_URL, url);
+            putIfNotNull(newMeta, KEY_ETAG, connection.getHeaderField("ETag"));
+            putIfNotNull(newMeta, KEY_LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+            saveMeta(newMeta);
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void writeCatalog(InputStream in, CatalogReader reader) throws IOException {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            throw new IOException("Failed to create the cache directory " + mDir);
+        }
+        File tmpFile = new File(mDir, CATALOG_FILE + ".tmp");
+        OutputStream out = new FileOutputStream(tmpFile);
+        try {
+            if (reader != null) {
+                TeeInputStream tee = new TeeInputStream(in, out);
+                reader.read(tee);
+                // whatever the reader left unread still belongs in the cached copy
+                in = tee;
+            }
+            byte[] buffer = CatalogTransport.getBuffer();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+        mSnapshotFile.delete();
+        // rename so that a reader never sees a partially written catalog
+        if (!tmpFile.renameTo(mCatalogFile)) {
+            throw new IOException("Failed to move the catalog into " + mCatalogFile);
+        }
+    }
+
+    private Properties loadMeta() {
+        Properties meta = new Properties();
+        if (!mMetaFile.exists()) {
+            return meta;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(mMetaFile);
+            meta.load(in);
+        } catch (IOException e) {
+            LOGW(TAG, "Failed to read the catalog cache metadata", e);
+        } finally {
+            closeQuietly(in);
+        }
+        return meta;
+    }
+
+    private void saveMeta(Properties meta) {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(mMetaFile);
+            meta.store(out, null);
+        } catch (IOException e) {
+            LOGW(TAG, "Failed to write the catalog cache metadata", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Copies everything that is read from the stream into an output stream. Closing it leaves
+     * both streams open.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream mOut;
+
+        TeeInputStream(InputStream in, OutputStream out) {
+            super(in);
+            mOut = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mOut.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mOut.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(count, BUFFER_SIZE)];
+            int read = read(buffer, 0, buffer.length);
+            return read < 0 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the streams are closed by writeCatalog
+        }
+    }
+
+    private static void putIfNotNull(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The difference between two catalogs, as the sequence of adapter notifications that turns the
+ * old list into the new one. Entries are matched by their content id; an entry that is in both
+ * lists is reported as moved if its position changed, and as changed if any of its displayed
+ * fields differ. Computing the diff can be expensive for large catalogs and should be done off
+ * the main thread; {@link #dispatchTo(RecyclerView.Adapter)} must be called on the main thread.
+ */
+public class CatalogDiff {
+
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_MOVE = 2;
+    private static final int OP_CHANGE = 3;
+
+    /**
+     * Beyond this many operations, rebinding the visible rows is cheaper than dispatching and
+     * animating each operation, so the diff falls back to a full refresh.
+     */
+    private static final int MAX_OPERATIONS = 100;
+
+    private static final CatalogDiff FULL_REFRESH = new CatalogDiff(true, null, 0);
+
+    private final boolean mFullRefresh;
+    // each operation is stored as three ints: type, position (or from) and count (or to)
+    private final int[] mOps;
+    private final int mOpCount;
+
+    private CatalogDiff(boolean fullRefresh, int[] ops, int opCount) {
+        mFullRefresh = fullRefresh;
+        mOps = ops;
+        mOpCount = opCount;
+    }
+
+    /**
+     * Computes the notifications that turn {@code oldList} into {@code newList}. If either list is
+     * {@code null}, content ids are not unique or the lists differ by more than
+     * {@link #MAX_OPERATIONS} operations, the diff falls back to a full refresh.
+     * <p>
+     * The entries that are in both lists and form the longest run whose relative order did not
+     * change stay where they are; only the other ones are moved, each one once, so the cost is
+     * O(n log n) and a single entry moving from one end of the list to the other is reported as a
+     * single move.
+     */
+    public static CatalogDiff compute(List<VideoItem> oldList, List<VideoItem> newList) {
+        if (oldList == null || newList == null) {
+            return FULL_REFRESH;
+        }
+        int oldSize = oldList.size();
+        int newSize = newList.size();
+        Map<String, Integer> newPositions = new HashMap<>(newSize * 2);
+        for (int i = 0; i < newSize; i++) {
+            if (newPositions.put(newList.get(i).getContentId(), i) != null) {
+                return FULL_REFRESH;
+            }
+        }
+        // the position of every old entry in the new list, or -1 if it was removed, and back
+        int[] oldToNew = new int[oldSize];
+        int[] newToOld = new int[newSize];
+        Arrays.fill(newToOld, -1);
+        Set<String> oldKeys = new HashSet<>(oldSize * 2);
+        for (int i = 0; i < oldSize; i++) {
+            String key = oldList.get(i).getContentId();
+            if (!oldKeys.add(key)) {
+                return FULL_REFRESH;
+            }
+            Integer position = newPositions.get(key);
+            oldToNew[i] = position == null ? -1 : position;
+            if (position != null) {
+                newToOld[position] = i;
+            }
+        }
+
+        Builder builder = new Builder();
+        // removals first, from the end so that earlier positions stay valid
+        for (int i = oldSize - 1; i >= 0; i--) {
+            if (oldToNew[i] < 0) {
+                builder.add(OP_REMOVE, i);
+                if (builder.mCount > MAX_OPERATIONS) {
+                    return FULL_REFRESH;
+                }
+            }
+        }
+
+        // Every entry gets a slot, so that the order of the slots in use is the order of the
+        // list at any point: the remaining entries are in their slots first, and each entry that
+        // is moved or inserted goes to a slot right after that of the entry before it in the new
+        // order. Positions are then counted with a Fenwick tree over the slots.
+        boolean[] stable = findStable(oldToNew, newSize);
+        int[] initialSlots = new int[oldSize];
+        int[] finalSlots = new int[newSize];
+        int slotCount = 0;
+        for (int i = 0; i < newSize && !stable[i]; i++) {
+            finalSlots[i] = slotCount++;
+        }
+        for (int i = 0; i < oldSize; i++) {
+            int position = oldToNew[i];
+            if (position < 0) {
+                continue;
+            }
+            initialSlots[i] = slotCount++;
+            if (stable[position]) {
+                finalSlots[position] = initialSlots[i];
+                for (int j = position + 1; j < newSize && !stable[j]; j++) {
+                    finalSlots[j] = slotCount++;
+                }
+            }
+        }
+        int[] tree = new int[slotCount + 1];
+        for (int i = 0; i < oldSize; i++) {
+            if (oldToNew[i] >= 0) {
+                updateSlot(tree, initialSlots[i], 1);
+            }
+        }
+        for (int i = 0; i < newSize; i++) {
+            if (stable[i]) {
+                continue;
+            }
+            int oldPosition = newToOld[i];
+            if (oldPosition < 0) {
+                builder.add(OP_INSERT, countBefore(tree, finalSlots[i]));
+            } else {
+                int from = countBefore(tree, initialSlots[oldPosition]);
+                updateSlot(tree, initialSlots[oldPosition], -1);
+                int to = countBefore(tree, finalSlots[i]);
+                if (from != to) {
+                    builder.addMove(from, to);
+                }
+            }
+            updateSlot(tree, finalSlots[i], 1);
+            if (builder.mCount > MAX_OPERATIONS) {
+                return FULL_REFRESH;
+            }
+        }
+
+        // finally, the entries whose content changed, at their final positions
+        for (int i = 0; i < newSize; i++) {
+            int oldPosition = newToOld[i];
+            if (oldPosition >= 0 && !sameContent(oldList.get(oldPosition), newList.get(i))) {
+                builder.add(OP_CHANGE, i);
+                if (builder.mCount > MAX_OPERATIONS) {
+                    return FULL_REFRESH;
+                }
+            }
+        }
+        return new CatalogDiff(false, builder.mOps, builder.mCount);
+    }
+
+    /**
+     * Returns, indexed by new position, which of the entries that are in both lists belong to the
+     * longest subsequence of the old list whose new positions are increasing; those entries do
+     * not need to move.
+     */
+    private static boolean[] findStable(int[] oldToNew, int newSize) {
+        int oldSize = oldToNew.length;
+        // tails[k] is the old position ending the smallest increasing run of length k + 1
+        int[] tails = new int[oldSize];
+        int[] previous = new int[oldSize];
+        int length = 0;
+        for (int i = 0; i < oldSize; i++) {
+            int position = oldToNew[i];
+            if (position < 0) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (oldToNew[tails[middle]] < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] stable = new boolean[newSize];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            stable[oldToNew[i]] = true;
+        }
+        return stable;
+    }
+
+    private static void updateSlot(int[] tree, int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the number of slots in use before {@code slot}.
+     */
+    private static int countBefore(int[] tree, int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private static boolean sameContent(VideoItem a, VideoItem b) {
+        return TextUtils.equals(a.getTitle(), b.getTitle())
+                && TextUtils.equals(a.getStudio(), b.getStudio())
+                && sameImages(a, b)
+                && TextUtils.equals(a.getDescription(), b.getDescription())
+                && TextUtils.equals(a.getMimeType(), b.getMimeType())
+                && a.getDuration() == b.getDuration();
+    }
+
+    /**
+     * Returns {@code true} if both items show the same artwork: the same variants, at the same
+     * sizes and under the same prefix, or the same thumbnail when the sizes are not known. The
+     * variant a row shows depends on its size, so any variant that changed may be the one on
+     * screen.
+     */
+    private static boolean sameImages(VideoItem a, VideoItem b) {
+        List<VideoItem.Image> aImages = a.getImages();
+        List<VideoItem.Image> bImages = b.getImages();
+        if (aImages.isEmpty() && bImages.isEmpty()) {
+            return TextUtils.equals(a.getImageUrl(), b.getImageUrl());
+        }
+        int size = aImages.size();
+        if (size != bImages.size() || !TextUtils.equals(a.getPrefixes().get(a.getImagePrefix()),
+                b.getPrefixes().get(b.getImagePrefix()))) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            VideoItem.Image aImage = aImages.get(i);
+            VideoItem.Image bImage = bImages.get(i);
+            if (aImage.getWidth() != bImage.getWidth() || aImage.getHeight() != bImage.getHeight()
+                    || !TextUtils.equals(aImage.getSuffix(), bImage.getSuffix())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the diff found no difference at all.
+     */
+    public boolean isEmpty() {
+        return !mFullRefresh && mOpCount == 0;
+    }
+
+    /**
+     * Sends the notifications of this diff to {@code adapter}, which must already be backed by
+     * the new list.
+     */
+    public void dispatchTo(RecyclerView.Adapter<?> adapter) {
+        if (mFullRefresh) {
+            adapter.notifyDataSetChanged();
+            return;
+        }
+        for (int i = 0; i < mOpCount; i++) {
+            int a = mOps[i * 3 + 1];
+            int b = mOps[i * 3 + 2];
+            switch (mOps[i * 3]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(a, b);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(a, b);
+                    break;
+                case OP_MOVE:
+                    adapter.notifyItemMoved(a, b);
+                    break;
+                case OP_CHANGE:
+                    adapter.notifyItemRangeChanged(a, b);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + mOps[i * 3]);
+            }
+        }
+    }
+
+    /**
+     * Collects operations, merging adjacent removals, insertions and changes into ranges.
+     */
+    private static class Builder {
+
+        private int[] mOps = new int[3 * 16];
+        private int mCount;
+
+        void add(int type, int position) {
+            if (mCount > 0) {
+                int last = (mCount - 1) * 3;
+                if (mOps[last] == type) {
+                    int start = mOps[last + 1];
+                    int count = mOps[last + 2];
+                    if (type == OP_REMOVE && position == start - 1) {
+                        // removals are collected from the end of the list
+                        mOps[last + 1] = position;
+                        mOps[last + 2] = count + 1;
+                        return;
+                    } else if (type != OP_REMOVE && position == start + count) {
+                        mOps[last + 2] = count + 1;
+                        return;
+                    }
+                }
+            }
+            append(type, position, 1);
+        }
+
+        void addMove(int from, int to) {
+            append(OP_MOVE, from, to);
+        }
+
+        private void append(int type, int a, int b) {
+            if ((mCount + 1) * 3 > mOps.length) {
+                int[] ops = new int[mOps.length * 2];
+                System.arraycopy(mOps, 0, ops, 0, mCount * 3);
+                mOps = ops;
+            }
+            mOps[mCount * 3] = type;
+            mOps[mCount * 3 + 1] = a;
+            mOps[mCount * 3 + 2] = b;
+            mCount++;
+        }
+    }
+}
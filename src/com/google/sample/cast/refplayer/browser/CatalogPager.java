@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+
+import com.google.sample.cast.refplayer.images.LatencyHistogram;
+import com.google.sample.cast.refplayer.utils.LogUtils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands the catalog to the browser one page at a time. While the catalog is still being parsed,
+ * videos are fed to the pager as they come off the parser (see {@link #onVideoParsed}) and the
+ * first page is shown as soon as it is complete; once the whole catalog is known it is set with
+ * {@link #setCatalog(List)}. Further pages are only shown when the list is scrolled to within
+ * the prefetch distance of its last row.
+ * <p>
+ * A page is shown by appending its rows to the list that is shown, nothing is copied or diffed.
+ * When the catalog is a mapped {@link CatalogSnapshot}, the list that is shown is the snapshot
+ * itself, so the rows of a page are only read from it as they are bound.
+ * <p>
+ * The time it takes from the creation of a pager until its first row can be shown is recorded
+ * in {@link #getFirstRowTimes()}.
+ * <p>
+ * {@link #onVideoParsed} may be called from any thread; every other method, as well as the
+ * listener, runs on the main thread.
+ */
+public class CatalogPager implements VideoProvider.OnVideoParsedListener {
+
+    private static final String TAG = "CatalogPager";
+
+    private static final LatencyHistogram sFirstRowTimes = new LatencyHistogram(
+            "Time to first row");
+
+    /**
+     * Receives the rows that should be shown.
+     */
+    public interface OnPageLoadedListener {
+
+        /**
+         * Shows the first {@code count} rows of {@code items}, in place of the rows shown so far.
+         */
+        void onCatalogChanged(List<VideoItem> items, int count);
+
+        /**
+         * Shows the rows of the list given to {@link #onCatalogChanged} up to {@code count}. Rows
+         * are only ever appended to that list, so the rows shown so far are left as they are.
+         */
+        void onPageLoaded(int count);
+
+        /**
+         * Shows the rows that are shown from {@code items} rather than from the list given to
+         * {@link #onCatalogChanged}, which holds the same entries in the same order. Nothing
+         * moved or changed, so the rows keep their ids and there is nothing to diff.
+         */
+        void onCatalogReplaced(List<VideoItem> items);
+    }
+
+    private final int mPageSize;
+    private final int mPrefetchDistance;
+    private final OnPageLoadedListener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final long mStartTime = System.nanoTime();
+    private boolean mFirstRowShown;
+    private List<VideoItem> mShownSource;
+    private int mShownCount;
+    // the videos parsed so far that are shown, only touched on the main thread since the parser
+    // keeps adding to the list it fills
+    private List<VideoItem> mRows = new ArrayList<>();
+
+    // guarded by this
+    private List<VideoItem> mParsed = new ArrayList<>();
+    private List<VideoItem> mCatalog;
+    private int mRequestedCount;
+    private boolean mUpdatePosted;
+
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            update();
+        }
+    };
+
+    /**
+     * @param pageSize the number of rows added to the list at a time
+     * @param prefetchDistance how close to the last row the list may be scrolled before the next
+     * page is added
+     */
+    public CatalogPager(int pageSize, int prefetchDistance, OnPageLoadedListener listener) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        mPageSize = pageSize;
+        mPrefetchDistance = prefetchDistance;
+        mListener = listener;
+        mRequestedCount = pageSize;
+    }
+
+    /**
+     * Returns a copy of the times it took the pagers of this process to show their first row.
+     */
+    public static LatencyHistogram getFirstRowTimes() {
+        return new LatencyHistogram(sFirstRowTimes);
+    }
+
+    @Override
+    public void onVideoParsed(VideoItem video) {
+        synchronized (this) {
+            if (mCatalog != null) {
+                return;
+            }
+            mParsed.add(video);
+            int count = mParsed.size();
+            if (count > mRequestedCount || count % mPageSize != 0 || mUpdatePosted) {
+                return;
+            }
+            mUpdatePosted = true;
+        }
+        mHandler.post(mUpdateRunnable);
+    }
+
+    /**
+     * Sets the complete catalog. The rows that are already shown are replaced by the same number
+     * of rows of {@code catalog}, so that a refreshed catalog can be diffed against them.
+     */
+    public void setCatalog(List<VideoItem> catalog) {
+        synchronized (this) {
+            if (catalog == mCatalog) {
+                return;
+            }
+            mCatalog = catalog;
+            mParsed = null;
+        }
+        mRows = null;
+        update();
+    }
+
+    /**
+     * Replaces the catalog by {@code snapshot} if it is {@code items}, which holds the same
+     * entries in the same order. The rows that are shown are handed over to the snapshot as they
+     * are, without a diff.
+     */
+    public void replaceCatalog(List<VideoItem> items, CatalogSnapshot snapshot) {
+        synchronized (this) {
+            if (mCatalog != items) {
+                return;
+            }
+            mCatalog = snapshot;
+        }
+        if (mShownSource == items) {
+            mShownSource = snapshot;
+            mListener.onCatalogReplaced(snapshot);
+        }
+        update();
+    }
+
+    /**
+     * To be called whenever the list is scrolled, with the position of the last visible row.
+     */
+    public void onScrolled(int lastVisiblePosition) {
+        if (lastVisiblePosition < 0 || mShownCount - 1 - lastVisiblePosition > mPrefetchDistance) {
+            return;
+        }
+        synchronized (this) {
+            if (mRequestedCount > mShownCount) {
+                // the previous page is not available yet
+                return;
+            }
+            mRequestedCount += mPageSize;
+        }
+        update();
+    }
+
+    private void update() {
+        List<VideoItem> source;
+        int count;
+        synchronized (this) {
+            mUpdatePosted = false;
+            if (mCatalog != null) {
+                source = mCatalog;
+                count = Math.min(mRequestedCount, source.size());
+            } else {
+                source = mRows;
+                count = Math.min(mRequestedCount, mParsed.size());
+                for (int i = mRows.size(); i < count; i++) {
+                    mRows.add(mParsed.get(i));
+                }
+            }
+        }
+        if (source == mShownSource) {
+            if (count > mShownCount) {
+                mShownCount = count;
+                onFirstRow();
+                mListener.onPageLoaded(count);
+            }
+            return;
+        }
+        mShownSource = source;
+        mShownCount = count;
+        onFirstRow();
+        mListener.onCatalogChanged(source, count);
+    }
+
+    private void onFirstRow() {
+        if (mFirstRowShown || mShownCount == 0) {
+            return;
+        }
+        mFirstRowShown = true;
+        long time = System.nanoTime() - mStartTime;
+        sFirstRowTimes.record(time);
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "Time to first row: " + time / 1000000 + "ms");
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGW;
+
+import com.google.sample.cast.refplayer.images.ImageVariantSelector;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * A compact, read-only binary image of the catalog that is memory-mapped on load. Rows can be
+ * bound straight from the mapped file through {@link #getTitle(int)}, {@link #getStudio(int)}
+ * and {@link #getImageUrl(int)}; a {@link VideoItem} is only materialized by {@link #get(int)}.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header    magic, version, video, track, image, prefix and string counts, CRC32 of the body
+ * prefixes  the string index of every entry of the {@link UrlPrefixTable}
+ * videos    fixed-width records of string indices, prefix ids and ints
+ * tracks    fixed-width records, referenced from the videos by start index and count
+ * images    the size and url suffix of every variant of the artwork, referenced likewise
+ * strings   an offset table of (string count + 1) entries followed by the UTF-8 data
+ * </pre>
+ */
+public class CatalogSnapshot extends AbstractList<VideoItem> implements RandomAccess {
+
+    private static final String TAG = "CatalogSnapshot";
+    private static final int MAGIC = 0x43565331; // "CVS1"
+    static final int VERSION = 4;
+
+    private static final int HEADER_SIZE = 7 * 4 + 8;
+
+    // video record
+    private static final int VIDEO_TITLE = 0;
+    private static final int VIDEO_STUDIO = 4;
+    private static final int VIDEO_DESCRIPTION = 8;
+    private static final int VIDEO_CONTENT_PREFIX = 12;
+    private static final int VIDEO_CONTENT_SUFFIX = 16;
+    private static final int VIDEO_MIME = 20;
+    private static final int VIDEO_IMAGE_PREFIX = 24;
+    private static final int VIDEO_IMAGE_SUFFIX = 28;
+    private static final int VIDEO_BIG_IMAGE_SUFFIX = 32;
+    private static final int VIDEO_DURATION = 36;
+    private static final int VIDEO_TRACK_START = 40;
+    private static final int VIDEO_TRACK_COUNT = 44;
+    private static final int VIDEO_IMAGE_START = 48;
+    private static final int VIDEO_IMAGE_COUNT = 52;
+    private static final int VIDEO_RECORD_SIZE = 56;
+
+    // track record
+    private static final int TRACK_ID = 0;
+    private static final int TRACK_TYPE = 8;
+    private static final int TRACK_SUBTYPE = 12;
+    private static final int TRACK_CONTENT_PREFIX = 16;
+    private static final int TRACK_CONTENT_SUFFIX = 20;
+    private static final int TRACK_NAME = 24;
+    private static final int TRACK_LANGUAGE = 28;
+    private static final int TRACK_RECORD_SIZE = 32;
+
+    // image record
+    private static final int IMAGE_WIDTH = 0;
+    private static final int IMAGE_HEIGHT = 4;
+    private static final int IMAGE_SUFFIX = 8;
+    private static final int IMAGE_RECORD_SIZE = 12;
+
+    private static final int NO_STRING = -1;
+
+    private final ByteBuffer mBuffer;
+    private final UrlPrefixTable mPrefixes = new UrlPrefixTable();
+    private final int mVideoCount;
+    private final int mTrackCount;
+    private final int mImageCount;
+    private final int mStringCount;
+    private final int mVideosOffset;
+    private final int mTracksOffset;
+    private final int mImagesOffset;
+    private final int mStringOffsetsOffset;
+    private final int mStringDataOffset;
+
+    private CatalogSnapshot(ByteBuffer buffer, int videoCount, int trackCount, int imageCount,
+            int prefixCount, int stringCount) {
+        mBuffer = buffer;
+        mVideoCount = videoCount;
+        mTrackCount = trackCount;
+        mImageCount = imageCount;
+        mStringCount = stringCount;
+        mVideosOffset = HEADER_SIZE + prefixCount * 4;
+        mTracksOffset = mVideosOffset + videoCount * VIDEO_RECORD_SIZE;
+        mImagesOffset = mTracksOffset + trackCount * TRACK_RECORD_SIZE;
+        mStringOffsetsOffset = mImagesOffset + imageCount * IMAGE_RECORD_SIZE;
+        mStringDataOffset = mStringOffsetsOffset + (stringCount + 1) * 4;
+    }
+
+    /**
+     * Maps the snapshot stored in {@code file}. Returns {@code null} if there is no snapshot, or
+     * if it was written with a different schema version or fails its checksum, in which case the
+     * caller should fall back to the json catalog.
+     */
+    public static CatalogSnapshot open(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                LOGW(TAG, "Snapshot has an invalid size: " + size);
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                LOGD(TAG, "Snapshot has an unknown format or version, ignoring it");
+                return null;
+            }
+            int videoCount = buffer.getInt(8);
+            int trackCount = buffer.getInt(12);
+            int imageCount = buffer.getInt(16);
+            int prefixCount = buffer.getInt(20);
+            int stringCount = buffer.getInt(24);
+            long checksum = buffer.getLong(28);
+            if (videoCount < 0 || trackCount < 0 || imageCount < 0 || prefixCount < 0
+                    || stringCount < 0
+                    || checksum != checksum(buffer, HEADER_SIZE, (int) size)) {
+                LOGW(TAG, "Snapshot is corrupt, ignoring it");
+                return null;
+            }
+            CatalogSnapshot snapshot = new CatalogSnapshot(buffer, videoCount, trackCount,
+                    imageCount, prefixCount, stringCount);
+            if (snapshot.mStringDataOffset > size) {
+                LOGW(TAG, "Snapshot is truncated, ignoring it");
+                return null;
+            }
+            for (int i = 0; i < prefixCount; i++) {
+                snapshot.mPrefixes.intern(snapshot.getString(HEADER_SIZE + i * 4));
+            }
+            return snapshot;
+        } catch (IOException e) {
+            LOGW(TAG, "Failed to map the snapshot", e);
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    // the mapping stays valid after the file is closed
+                    raf.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes {@code mediaList} to {@code file} as a snapshot. The file is written to a temporary
+     * location first and renamed, so a reader never maps a half-written snapshot.
+     */
+    public static void write(File file, List<VideoItem> mediaList) throws IOException {
+        StringTable strings = new StringTable();
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        List<VideoItem.Track> tracks = new ArrayList<>();
+        List<UrlPrefixTable> trackPrefixes = new ArrayList<>();
+        List<VideoItem.Image> images = new ArrayList<>();
+        int[] records = new int[mediaList.size() * VIDEO_RECORD_SIZE / 4];
+        int r = 0;
+        for (VideoItem video : mediaList) {
+            UrlPrefixTable videoPrefixes = video.getPrefixes();
+            records[r++] = strings.add(video.getTitle());
+            records[r++] = strings.add(video.getStudio());
+            records[r++] = strings.add(video.getDescription());
+            records[r++] = prefixes.intern(videoPrefixes.get(video.getContentPrefix()));
+            records[r++] = strings.add(video.getContentSuffix());
+            records[r++] = strings.add(video.getMimeType());
+            records[r++] = prefixes.intern(videoPrefixes.get(video.getImagePrefix()));
+            records[r++] = strings.add(video.getImageSuffix());
+            records[r++] = strings.add(video.getBigImageSuffix());
+            records[r++] = video.getDuration();
+            records[r++] = tracks.size();
+            records[r++] = video.getTracks().size();
+            records[r++] = images.size();
+            records[r++] = video.getImages().size();
+            for (VideoItem.Image image : video.getImages()) {
+                strings.add(image.getSuffix());
+                images.add(image);
+            }
+            for (VideoItem.Track track : video.getTracks()) {
+                strings.add(track.getType());
+                strings.add(track.getSubType());
+                strings.add(track.getContentSuffix());
+                strings.add(track.getName());
+                strings.add(track.getLanguage());
+                tracks.add(track);
+                trackPrefixes.add(videoPrefixes);
+            }
+        }
+        int[] trackContentPrefixes = new int[tracks.size()];
+        for (int i = 0; i < tracks.size(); i++) {
+            trackContentPrefixes[i] = prefixes.intern(
+                    trackPrefixes.get(i).get(tracks.get(i).getContentPrefix()));
+        }
+        int prefixCount = prefixes.size();
+        for (int i = 0; i < prefixCount; i++) {
+            strings.add(prefixes.get(i));
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        ByteBuffer body = ByteBuffer.allocate(prefixCount * 4 + records.length * 4
+                + tracks.size() * TRACK_RECORD_SIZE + images.size() * IMAGE_RECORD_SIZE
+                + strings.byteSize());
+        for (int i = 0; i < prefixCount; i++) {
+            body.putInt(strings.indexOf(prefixes.get(i)));
+        }
+        for (int value : records) {
+            body.putInt(value);
+        }
+        for (int i = 0; i < tracks.size(); i++) {
+            VideoItem.Track track = tracks.get(i);
+            body.putLong(track.getId());
+            body.putInt(strings.indexOf(track.getType()));
+            body.putInt(strings.indexOf(track.getSubType()));
+            body.putInt(trackContentPrefixes[i]);
+            body.putInt(strings.indexOf(track.getContentSuffix()));
+            body.putInt(strings.indexOf(track.getName()));
+            body.putInt(strings.indexOf(track.getLanguage()));
+        }
+        for (VideoItem.Image image : images) {
+            body.putInt(image.getWidth());
+            body.putInt(image.getHeight());
+            body.putInt(strings.indexOf(image.getSuffix()));
+        }
+        strings.writeTo(body);
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mediaList.size());
+            out.writeInt(tracks.size());
+            out.writeInt(images.size());
+            out.writeInt(prefixCount);
+            out.writeInt(strings.size());
+            out.writeLong(checksum(body, 0, body.capacity()));
+            out.write(body.array());
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Failed to move the snapshot into " + file);
+        }
+    }
+
+    @Override
+    public VideoItem get(int position) {
+        int record = recordOffset(position);
+        List<VideoItem.Track> tracks = null;
+        int trackCount = mBuffer.getInt(record + VIDEO_TRACK_COUNT);
+        if (trackCount > 0) {
+            int trackStart = mBuffer.getInt(record + VIDEO_TRACK_START);
+            tracks = new ArrayList<>(trackCount);
+            for (int i = trackStart; i < trackStart + trackCount; i++) {
+                tracks.add(getTrack(i));
+            }
+        }
+        List<VideoItem.Image> images = null;
+        int imageCount = mBuffer.getInt(record + VIDEO_IMAGE_COUNT);
+        if (imageCount > 0) {
+            int imageStart = mBuffer.getInt(record + VIDEO_IMAGE_START);
+            images = new ArrayList<>(imageCount);
+            for (int i = imageStart; i < imageStart + imageCount; i++) {
+                int image = imageOffset(i);
+                images.add(new VideoItem.Image(mBuffer.getInt(image + IMAGE_WIDTH),
+                        mBuffer.getInt(image + IMAGE_HEIGHT), getString(image + IMAGE_SUFFIX)));
+            }
+        }
+        return new VideoItem(mPrefixes,
+                getString(record + VIDEO_TITLE),
+                getString(record + VIDEO_STUDIO),
+                getString(record + VIDEO_DESCRIPTION),
+                mBuffer.getInt(record + VIDEO_DURATION),
+                mBuffer.getInt(record + VIDEO_CONTENT_PREFIX),
+                getString(record + VIDEO_CONTENT_SUFFIX),
+                getString(record + VIDEO_MIME),
+                mBuffer.getInt(record + VIDEO_IMAGE_PREFIX),
+                getString(record + VIDEO_IMAGE_SUFFIX),
+                getString(record + VIDEO_BIG_IMAGE_SUFFIX),
+                images,
+                tracks);
+    }
+
+    @Override
+    public int size() {
+        return mVideoCount;
+    }
+
+    public String getTitle(int position) {
+        return getString(recordOffset(position) + VIDEO_TITLE);
+    }
+
+    public String getStudio(int position) {
+        return getString(recordOffset(position) + VIDEO_STUDIO);
+    }
+
+    /**
+     * Returns the same id as {@link VideoItem#getStableId()} for the item at {@code position},
+     * without materializing it.
+     */
+    public long getStableId(int position) {
+        int record = recordOffset(position);
+        return mPrefixes.hash(mBuffer.getInt(record + VIDEO_CONTENT_PREFIX),
+                getString(record + VIDEO_CONTENT_SUFFIX));
+    }
+
+    public String getImageUrl(int position) {
+        int record = recordOffset(position);
+        return mPrefixes.resolve(mBuffer.getInt(record + VIDEO_IMAGE_PREFIX),
+                getString(record + VIDEO_IMAGE_SUFFIX));
+    }
+
+    /**
+     * Returns the url of the variant of the artwork at {@code position} that {@code selector}
+     * prefers for a view of {@code width} by {@code height} pixels, without materializing the
+     * item.
+     *
+     * @see VideoItem#getImageUrl(ImageVariantSelector, int, int)
+     */
+    public String getImageUrl(int position, ImageVariantSelector selector, int width,
+            int height) {
+        int record = recordOffset(position);
+        int imageStart = mBuffer.getInt(record + VIDEO_IMAGE_START);
+        int imageCount = mBuffer.getInt(record + VIDEO_IMAGE_COUNT);
+        int best = -1;
+        for (int i = imageStart; i < imageStart + imageCount; i++) {
+            int image = imageOffset(i);
+            if (best < 0 || selector.isPreferred(mBuffer.getInt(image + IMAGE_WIDTH),
+                    mBuffer.getInt(image + IMAGE_HEIGHT), mBuffer.getInt(best + IMAGE_WIDTH),
+                    mBuffer.getInt(best + IMAGE_HEIGHT), width, height)) {
+                best = image;
+            }
+        }
+        if (best < 0) {
+            return getImageUrl(position);
+        }
+        return mPrefixes.resolve(mBuffer.getInt(record + VIDEO_IMAGE_PREFIX),
+                getString(best + IMAGE_SUFFIX));
+    }
+
+    private int recordOffset(int position) {
+        if (position < 0 || position >= mVideoCount) {
+            throw new IndexOutOfBoundsException("Invalid position " + position);
+        }
+        return mVideosOffset + position * VIDEO_RECORD_SIZE;
+    }
+
+    private int imageOffset(int index) {
+        if (index < 0 || index >= mImageCount) {
+            throw new IndexOutOfBoundsException("Invalid image " + index);
+        }
+        return mImagesOffset + index * IMAGE_RECORD_SIZE;
+    }
+
+    private VideoItem.Track getTrack(int index) {
+        if (index >= mTrackCount) {
+            throw new IndexOutOfBoundsException("Invalid track " + index);
+        }
+        int record = mTracksOffset + index * TRACK_RECORD_SIZE;
+        return new VideoItem.Track(mBuffer.getLong(record + TRACK_ID),
+                getString(record + TRACK_TYPE),
+                getString(record + TRACK_SUBTYPE),
+                mBuffer.getInt(record + TRACK_CONTENT_PREFIX),
+                getString(record + TRACK_CONTENT_SUFFIX),
+                getString(record + TRACK_NAME),
+                getString(record + TRACK_LANGUAGE));
+    }
+    /**
+     * Reads the string whose index is stored at {@code indexOffset}. Only absolute reads are used
+     * so the shared buffer can be read from several threads.
+     */
+    private String getString(int indexOffset) {
+        int index = mBuffer.getInt(indexOffset);
+        if (index == NO_STRING || index >= mStringCount) {
+            return null;
+        }
+        int start = mBuffer.getInt(mStringOffsetsOffset + index * 4);
+        int end = mBuffer.getInt(mStringOffsetsOffset + (index + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = mBuffer.get(mStringDataOffset + start + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8 * 1024];
+        ByteBuffer view = buffer.duplicate();
+        view.position(from);
+        view.limit(to);
+        while (view.hasRemaining()) {
+            int length = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Collects the distinct strings of the catalog, each stored once in UTF-8.
+     */
+    private static class StringTable {
+
+        private final Map<String, Integer> mIndices = new HashMap<>();
+        private final List<byte[]> mData = new ArrayList<>();
+        private int mByteCount;
+
+        int add(String value) {
+            if (value == null) {
+                return NO_STRING;
+            }
+            Integer index = mIndices.get(value);
+            if (index == null) {
+                byte[] bytes;
+                try {
+                    bytes = value.getBytes("UTF-8");
+                } catch (java.io.UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+                index = mData.size();
+                mIndices.put(value, index);
+                mData.add(bytes);
+                mByteCount += bytes.length;
+            }
+            return index;
+        }
+
+        int indexOf(String value) {
+            if (value == null) {
+                return NO_STRING;
+            }
+            return mIndices.get(value);
+        }
+
+        int size() {
+            return mData.size();
+        }
+
+        int byteSize() {
+            return (mData.size() + 1) * 4 + mByteCount;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            int offset = 0;
+            for (byte[] bytes : mData) {
+                buffer.putInt(offset);
+                offset += bytes.length;
+            }
+            buffer.putInt(offset);
+            for (byte[] bytes : mData) {
+                buffer.put(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the catalog of the process. A catalog is only ever published once it has been fully
+ * built, as an immutable {@link Catalog} with a version number, and replaces the previous one in
+ * a single atomic step. Readers never lock: they take the current catalog and keep working on it,
+ * even if a newer one is published in the meantime.
+ * <p>
+ * Under memory pressure, the rows that the {@link CatalogHolder}s materialized from a mapped
+ * catalog can be released with {@link #releaseMaterialized()}, and a catalog that is held in
+ * memory can be swapped for the mapped {@link CatalogSnapshot} of the same entries with
+ * {@link #shrinkToSnapshot()}. The holders are told to do the same, since the entries are only
+ * released once none of them references them anymore.
+ */
+public final class CatalogStore {
+
+    private static final AtomicReference<Catalog> sCurrent = new AtomicReference<>();
+    private static final AtomicLong sNextVersion = new AtomicLong(1);
+    private static final List<CatalogHolder> sHolders = new CopyOnWriteArrayList<>();
+
+    private CatalogStore() {
+    }
+
+    /**
+     * Returns the current catalog, or {@code null} if none has been published yet.
+     */
+    public static Catalog getCurrent() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Publishes {@code items} as the new current catalog and returns it. The list is copied
+     * unless it is already immutable, so the caller is free to reuse it.
+     */
+    public static Catalog publish(List<VideoItem> items) {
+        Catalog catalog = new Catalog(sNextVersion.getAndIncrement(), items);
+        sCurrent.set(catalog);
+        return catalog;
+    }
+
+    /**
+     * Records that {@code snapshotFile} holds the same entries as {@code items}, if they are those
+     * of the current catalog.
+     */
+    static void setSnapshotFile(List<VideoItem> items, File snapshotFile) {
+        Catalog current = sCurrent.get();
+        if (current != null && current.mItems == items) {
+            current.mSnapshotFile = snapshotFile;
+        }
+    }
+
+    public static void registerHolder(CatalogHolder holder) {
+        sHolders.add(holder);
+    }
+
+    public static void unregisterHolder(CatalogHolder holder) {
+        sHolders.remove(holder);
+    }
+
+    /**
+     * Asks every holder to release the rows it materialized from a mapped catalog. Returns the
+     * number of rows that were released.
+     */
+    public static int releaseMaterialized() {
+        int released = 0;
+        for (CatalogHolder holder : sHolders) {
+            released += holder.releaseMaterialized();
+        }
+        return released;
+    }
+
+    /**
+     * Replaces the current catalog by its mapped snapshot, with the same version, if its entries
+     * are held in memory and a snapshot of them has been written, and hands the snapshot to every
+     * holder in its place. Returns the number of entries that were released.
+     */
+    public static int shrinkToSnapshot() {
+        Catalog current = sCurrent.get();
+        if (current == null || current.mItems instanceof CatalogSnapshot
+                || current.mSnapshotFile == null) {
+            return 0;
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.open(current.mSnapshotFile);
+        if (snapshot == null || snapshot.size() != current.mItems.size()) {
+            return 0;
+        }
+        if (!sCurrent.compareAndSet(current, new Catalog(current.mVersion, snapshot))) {
+            // a newer catalog was published in the meantime
+            return 0;
+        }
+        for (CatalogHolder holder : sHolders) {
+            holder.onShrunkToSnapshot(current.mItems, snapshot);
+        }
+        return current.mItems.size();
+    }
+
+    /**
+     * Implemented by whatever keeps a reference to the entries of a catalog beyond the store, so
+     * that it lets go of them under memory pressure. Called on the main thread.
+     */
+    public interface CatalogHolder {
+
+        /**
+         * Releases the rows materialized from a mapped catalog, and returns how many there were.
+         */
+        int releaseMaterialized();
+
+        /**
+         * Called when {@code items}, the entries of the catalog, have been replaced by
+         * {@code snapshot}, which holds the same entries in the same order. A holder that
+         * references {@code items} should switch to {@code snapshot}.
+         */
+        void onShrunkToSnapshot(List<VideoItem> items, CatalogSnapshot snapshot);
+    }
+
+    /**
+     * An immutable, versioned list of catalog entries. Versions increase with every publication.
+     */
+    public static final class Catalog {
+
+        private final long mVersion;
+        private final List<VideoItem> mItems;
+        // a snapshot of the same entries, if they are held in memory
+        private volatile File mSnapshotFile;
+
+        private Catalog(long version, List<VideoItem> items) {
+            mVersion = version;
+            if (items instanceof CatalogSnapshot) {
+                // a mapped snapshot is read-only already
+                mItems = items;
+            } else {
+                mItems = Collections.unmodifiableList(new ArrayList<>(items));
+            }
+        }
+
+        public long getVersion() {
+            return mVersion;
+        }
+
+        public List<VideoItem> getItems() {
+            return mItems;
+        }
+    }
+}
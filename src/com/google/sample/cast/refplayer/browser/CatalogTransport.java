@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The network side of catalog fetches. Connections ask for a compressed response and have
+ * connect and read timeouts; response bodies are decompressed while they stream in and are always
+ * handed out as UTF-8, whatever charset the server declared, so that the cached copy and the
+ * parsers never have to care about the transfer encoding.
+ */
+public class CatalogTransport {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15 * 1000;
+    private static final int READ_TIMEOUT_MS = 30 * 1000;
+    private static final String UTF_8 = "UTF-8";
+
+    private static final ThreadLocal<byte[]> sBuffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private CatalogTransport() {
+    }
+
+    /**
+     * Opens a connection to {@code url}, with timeouts and an {@code Accept-Encoding} header. The
+     * request is not sent until the response is asked for, so callers may still add headers.
+     */
+    public static HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        // setting this explicitly turns off the transparent gzip handling of the platform, so
+        // that deflate can be offered as well and both are decoded in getBody()
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        return connection;
+    }
+
+    /**
+     * Returns the body of the response, decompressed and encoded as UTF-8.
+     */
+    public static InputStream getBody(HttpURLConnection connection) throws IOException {
+        InputStream in = new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE);
+        String encoding = connection.getContentEncoding();
+        if (encoding != null) {
+            switch (encoding.trim().toLowerCase(Locale.US)) {
+                case "gzip":
+                case "x-gzip":
+                    in = new GZIPInputStream(in, BUFFER_SIZE);
+                    break;
+                case "deflate":
+                    in = openDeflate(in);
+                    break;
+                case "identity":
+                    break;
+                default:
+                    in.close();
+                    throw new IOException("Unsupported content encoding: " + encoding);
+            }
+        }
+        String charset = getCharset(connection.getContentType());
+        if (charset != null && !isUtf8Compatible(Charset.forName(charset))) {
+            in = new Utf8InputStream(new InputStreamReader(in, charset));
+        }
+        return in;
+    }
+
+    /**
+     * Returns a buffer of {@link #BUFFER_SIZE} bytes that belongs to the calling thread. It is
+     * reused by every caller on that thread, so it must not be held on to.
+     */
+    public static byte[] getBuffer() {
+        return sBuffers.get();
+    }
+
+    /**
+     * Returns the charset declared by a {@code Content-Type} header, or {@code null} if there is
+     * none or it is not supported.
+     */
+    static String getCharset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            param = param.trim();
+            if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                String charset = param.substring(8).trim();
+                if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+                    charset = charset.substring(1, charset.length() - 1);
+                }
+                try {
+                    return Charset.isSupported(charset) ? charset : null;
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isUtf8Compatible(Charset charset) {
+        String name = charset.name();
+        return UTF_8.equals(name) || "US-ASCII".equals(name);
+    }
+
+    /**
+     * "deflate" is supposed to be zlib-wrapped, but some servers send a raw deflate stream, so
+     * the first bytes are checked for a zlib header.
+     */
+    private static InputStream openDeflate(InputStream in) throws IOException {
+        in.mark(2);
+        int cmf = in.read();
+        int flg = in.read();
+        in.reset();
+        boolean zlib = cmf != -1 && flg != -1 && (cmf & 0x0f) == 8
+                && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(in, new Inflater(!zlib), BUFFER_SIZE);
+    }
+
+    /**
+     * Encodes the characters of a reader as UTF-8.
+     */
+    private static class Utf8InputStream extends InputStream {
+
+        private final Reader mReader;
+        private final CharsetEncoder mEncoder = Charset.forName(UTF_8).newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer mChars = CharBuffer.allocate(BUFFER_SIZE / 4);
+        private final ByteBuffer mBytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private boolean mEndOfInput;
+
+        Utf8InputStream(Reader reader) {
+            mReader = reader;
+            mChars.flip();
+            mBytes.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            while (!mBytes.hasRemaining()) {
+                if (mEndOfInput && !mChars.hasRemaining()) {
+                    return -1;
+                }
+                fill();
+            }
+            int read = Math.min(count, mBytes.remaining());
+            mBytes.get(buffer, offset, read);
+            return read;
+        }
+
+        private void fill() throws IOException {
+            mChars.compact();
+            if (!mEndOfInput) {
+                int read = mReader.read(mChars);
+                if (read == -1) {
+                    mEndOfInput = true;
+                }
+            }
+            mChars.flip();
+            mBytes.clear();
+            CoderResult result = mEncoder.encode(mChars, mBytes, mEndOfInput);
+            if (mEndOfInput && !mChars.hasRemaining() && result.isUnderflow()) {
+                mEncoder.flush(mBytes);
+            }
+            mBytes.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
+        }
+    }
+}
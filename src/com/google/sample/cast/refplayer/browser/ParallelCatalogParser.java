@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the catalog with one task per category. The document is split while it is streamed: a
+ * cheap structural scan copies the bytes of one category at a time, which is then tokenized and
+ * materialized by its own {@link JsonReader} on a worker thread. The per-category results are
+ * joined in document order, so the list is identical to the one the sequential parser produces.
+ * <p>
+ * Only the categories that wait for a worker are held in memory, never the whole document. A
+ * catalog with a single category is parsed on the calling thread, without starting any worker.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class ParallelCatalogParser {
+
+    private static final String TAG_CATEGORIES = "categories";
+
+    private final int mParallelism;
+
+    ParallelCatalogParser(int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Parses the catalog read from {@code is}. The stream is not closed.
+     */
+    List<VideoItem> parse(InputStream is) throws IOException {
+        CategorySplitter splitter = new CategorySplitter(is);
+        final UrlPrefixTable prefixes = new UrlPrefixTable();
+        List<VideoItem> result = new ArrayList<>();
+        byte[] first = splitter.next();
+        byte[] second = first == null || mParallelism == 1 ? null : splitter.next();
+        if (second == null) {
+            for (byte[] data = first; data != null; data = splitter.next()) {
+                result.addAll(parseCategory(data, prefixes));
+            }
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(mParallelism);
+        try {
+            // the categories that are not parsed yet are bounded, and so is the memory they hold
+            Deque<Future<List<VideoItem>>> pending = new ArrayDeque<>();
+            pending.add(submit(executor, first, prefixes));
+            pending.add(submit(executor, second, prefixes));
+            first = null;
+            second = null;
+            byte[] data;
+            while ((data = splitter.next()) != null) {
+                if (pending.size() >= mParallelism * 2) {
+                    result.addAll(pending.removeFirst().get());
+                }
+                pending.add(submit(executor, data, prefixes));
+            }
+            while (!pending.isEmpty()) {
+                result.addAll(pending.removeFirst().get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing the catalog", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to parse the catalog", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Future<List<VideoItem>> submit(ExecutorService executor, final byte[] data,
+            final UrlPrefixTable prefixes) {
+        return executor.submit(new Callable<List<VideoItem>>() {
+            @Override
+            public List<VideoItem> call() throws IOException {
+                return parseCategory(data, prefixes);
+            }
+        });
+    }
+
+    private static List<VideoItem> parseCategory(byte[] data, UrlPrefixTable prefixes)
+            throws IOException {
+        final List<VideoItem> list = new ArrayList<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(data), "UTF-8"));
+        try {
+            VideoProvider.readCategory(reader, prefixes, new VideoProvider.OnVideoParsedListener() {
+                @Override
+                public void onVideoParsed(VideoItem video) {
+                    list.add(video);
+                }
+            });
+        } finally {
+            reader.close();
+        }
+        return list;
+    }
+
+    /**
+     * Returns the elements of the top level {@code categories} array of a document one at a time,
+     * as they are read from the stream. Only the structure is scanned: strings are skipped over
+     * without being decoded, which is safe on UTF-8 data since every byte of a multi-byte sequence
+     * is outside the ASCII range.
+     */
+    private static class CategorySplitter {
+
+        private static final int STATE_START = 0;
+        private static final int STATE_MEMBERS = 1;
+        private static final int STATE_CATEGORIES = 2;
+        private static final int STATE_DONE = 3;
+
+        private final InputStream mIn;
+        private final byte[] mBuffer = CatalogTransport.getBuffer();
+        private int mPos;
+        private int mLimit;
+        // the offset in the document of the start of the buffer
+        private long mOffset;
+        private int mState = STATE_START;
+        private int mMemberCount;
+        private int mElementCount;
+        private ByteArrayOutputStream mRecording;
+        private int mRecordStart;
+
+        CategorySplitter(InputStream in) {
+            mIn = in;
+        }
+
+        /**
+         * Returns the bytes of the next category, or {@code null} once the document has been
+         * read.
+         */
+        byte[] next() throws IOException {
+            while (true) {
+                switch (mState) {
+                    case STATE_START:
+                        skipWhitespace();
+                        expect('{');
+                        mState = STATE_MEMBERS;
+                        break;
+                    case STATE_MEMBERS:
+                        skipWhitespace();
+                        if (peek() == '}') {
+                            read();
+                            mState = STATE_DONE;
+                            break;
+                        }
+                        if (mMemberCount++ > 0) {
+                            expect(',');
+                            skipWhitespace();
+                        }
+                        boolean isCategories = readKey(TAG_CATEGORIES);
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                        if (isCategories) {
+                            expect('[');
+                            mElementCount = 0;
+                            mState = STATE_CATEGORIES;
+                        } else {
+                            skipValue();
+                        }
+                        break;
+                    case STATE_CATEGORIES:
+                        skipWhitespace();
+                        if (peek() == ']') {
+                            read();
+                            mState = STATE_MEMBERS;
+                            break;
+                        }
+                        if (mElementCount++ > 0) {
+                            expect(',');
+                            skipWhitespace();
+                        }
+                        mRecording = new ByteArrayOutputStream();
+                        mRecordStart = mPos;
+                        skipValue();
+                        mRecording.write(mBuffer, mRecordStart, mPos - mRecordStart);
+                        byte[] category = mRecording.toByteArray();
+                        mRecording = null;
+                        return category;
+                    default:
+                        return null;
+                }
+            }
+        }
+
+        private int peek() throws IOException {
+            if (mPos == mLimit && !fill()) {
+                return -1;
+            }
+            return mBuffer[mPos] & 0xff;
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            if (c != -1) {
+                mPos++;
+            }
+            return c;
+        }
+
+        private boolean fill() throws IOException {
+            if (mRecording != null) {
+                mRecording.write(mBuffer, mRecordStart, mLimit - mRecordStart);
+                mRecordStart = 0;
+            }
+            mOffset += mLimit;
+            mPos = 0;
+            mLimit = 0;
+            int read = mIn.read(mBuffer);
+            if (read <= 0) {
+                return false;
+            }
+            mLimit = read;
+            return true;
+        }
+
+        /**
+         * Reads a key and returns whether it is {@code key}.
+         */
+        private boolean readKey(String key) throws IOException {
+            expect('"');
+            boolean matches = true;
+            int length = 0;
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw new IOException("Malformed catalog: unterminated string");
+                } else if (c == '"') {
+                    return matches && length == key.length();
+                } else if (c == '\\') {
+                    read();
+                    matches = false;
+                } else if (length >= key.length() || c != key.charAt(length)) {
+                    matches = false;
+                }
+                length++;
+            }
+        }
+
+        private void skipValue() throws IOException {
+            int c = peek();
+            switch (c) {
+                case -1:
+                    throw new IOException("Malformed catalog: unexpected end of document");
+                case '"':
+                    skipString();
+                    return;
+                case '{':
+                case '[':
+                    int depth = 0;
+                    while ((c = peek()) != -1) {
+                        if (c == '"') {
+                            skipString();
+                            continue;
+                        }
+                        read();
+                        if (c == '{' || c == '[') {
+                            depth++;
+                        } else if (c == '}' || c == ']') {
+                            depth--;
+                            if (depth == 0) {
+                                return;
+                            }
+                        }
+                    }
+                    throw new IOException("Malformed catalog: unbalanced brackets");
+                default:
+                    // a number or a literal
+                    while ((c = peek()) != -1) {
+                        if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+                            break;
+                        }
+                        read();
+                    }
+            }
+        }
+
+        private void skipString() throws IOException {
+            expect('"');
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw new IOException("Malformed catalog: unterminated string");
+                } else if (c == '\\') {
+                    read();
+                } else if (c == '"') {
+                    return;
+                }
+            }
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (isWhitespace(peek())) {
+                read();
+            }
+        }
+
+        private static boolean isWhitespace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+        }
+
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw new IOException("Malformed catalog: expected '" + c + "' at "
+                        + (mOffset + mPos));
+            }
+            read();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import com.google.sample.cast.refplayer.R;
+import com.google.sample.cast.refplayer.images.ImageLoader;
+
+import android.content.res.Resources;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Prefetches the thumbnails of the rows that are about to scroll into view, so that they are
+ * already in the memory cache when they are bound. The rows ahead of the visible window, in the
+ * direction the list last moved in, are queued; queued rows that end up further than the prefetch
+ * distance from the window are cancelled. Nothing is queued while the list flings, since the rows
+ * it passes over are mostly never looked at, and what was queued is cancelled when a fling starts.
+ * <p>
+ * All the methods must be called on the main thread.
+ */
+public class ThumbnailPrefetcher extends RecyclerView.OnScrollListener {
+
+    private final ImageLoader mImageLoader;
+    private final VideoListAdapter mAdapter;
+    private final LinearLayoutManager mLayoutManager;
+    private final int mImageWidth;
+    private final int mImageHeight;
+    private int mDistance;
+    private int mDirection = 1;
+    private boolean mFlinging;
+    // the thumbnails queued for prefetching, by position
+    private final TreeMap<Integer, String> mQueued = new TreeMap<>();
+
+    /**
+     * @param distance the number of rows past the visible window whose thumbnails are prefetched
+     */
+    public ThumbnailPrefetcher(ImageLoader imageLoader, VideoListAdapter adapter,
+            LinearLayoutManager layoutManager, Resources resources, int distance) {
+        mImageLoader = imageLoader;
+        mAdapter = adapter;
+        mLayoutManager = layoutManager;
+        mImageWidth = resources.getDimensionPixelSize(R.dimen.browse_row_image_width);
+        mImageHeight = resources.getDimensionPixelSize(R.dimen.browse_row_image_height);
+        mDistance = Math.max(0, distance);
+    }
+
+    /**
+     * Changes the number of rows past the visible window whose thumbnails are prefetched.
+     */
+    public void setDistance(int distance) {
+        mDistance = Math.max(0, distance);
+        update();
+    }
+
+    public int getDistance() {
+        return mDistance;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        mFlinging = newState == RecyclerView.SCROLL_STATE_SETTLING;
+        if (mFlinging) {
+            cancelAll();
+        } else {
+            update();
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy != 0) {
+            mDirection = dy > 0 ? 1 : -1;
+        }
+        if (!mFlinging) {
+            update();
+        }
+    }
+
+    /**
+     * Cancels every prefetch that has not started yet, for instance when the list goes away.
+     */
+    public void cancelAll() {
+        for (Map.Entry<Integer, String> entry : mQueued.entrySet()) {
+            mImageLoader.cancelPrefetch(entry.getValue(), mImageWidth, mImageHeight);
+        }
+        mQueued.clear();
+    }
+
+    private void update() {
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        int count = mAdapter.getItemCount();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        // cancel what has fallen out of range, or whose row now shows another video
+        Iterator<Map.Entry<Integer, String>> iterator = mQueued.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> entry = iterator.next();
+            int position = entry.getKey();
+            if (position < first - mDistance || position > last + mDistance || position >= count
+                    || !entry.getValue().equals(
+                            mAdapter.getImageUrl(position, mImageWidth, mImageHeight))) {
+                mImageLoader.cancelPrefetch(entry.getValue(), mImageWidth, mImageHeight);
+                iterator.remove();
+            }
+        }
+
+        int start;
+        int end;
+        if (mDirection > 0) {
+            start = last + 1;
+            end = Math.min(last + mDistance, count - 1);
+        } else {
+            start = Math.max(first - mDistance, 0);
+            end = first - 1;
+        }
+        for (int position = start; position <= end; position++) {
+            if (mQueued.containsKey(position)) {
+                continue;
+            }
+            String url = mAdapter.getImageUrl(position, mImageWidth, mImageHeight);
+            if (url != null) {
+                mQueued.put(position, url);
+                mImageLoader.prefetch(url, mImageWidth, mImageHeight);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The url prefixes of a catalog. Every category declares a handful of prefixes (one per stream
+ * format, plus images and tracks) that all of its videos share, so catalog entries only keep the
+ * id of their prefix and their own suffix; the full url is only assembled by {@link #resolve}
+ * when it is handed to the cast or image layers.
+ */
+public class UrlPrefixTable {
+
+    public static final int NO_PREFIX = -1;
+
+    private final List<String> mPrefixes = new ArrayList<>();
+    private final Map<String, Integer> mIds = new HashMap<>();
+
+    /**
+     * Returns the id of {@code prefix}, adding it to the table if this is the first time it is
+     * seen.
+     */
+    public synchronized int intern(String prefix) {
+        if (prefix == null) {
+            return NO_PREFIX;
+        }
+        Integer id = mIds.get(prefix);
+        if (id == null) {
+            id = mPrefixes.size();
+            mPrefixes.add(prefix);
+            mIds.put(prefix, id);
+        }
+        return id;
+    }
+
+    public synchronized String get(int id) {
+        return id == NO_PREFIX ? null : mPrefixes.get(id);
+    }
+
+    public synchronized int size() {
+        return mPrefixes.size();
+    }
+
+    /**
+     * Joins the prefix with the given id and {@code suffix} into a full url. Returns {@code null}
+     * if there is no suffix.
+     */
+    public String resolve(int id, String suffix) {
+        if (suffix == null) {
+            return null;
+        }
+        String prefix = get(id);
+        return prefix == null ? suffix : prefix + suffix;
+    }
+
+    /**
+     * Returns a 64 bit hash of the url that {@link #resolve(int, String)} returns for the same
+     * arguments, without building it, or 0 if there is no suffix.
+     */
+    public long hash(int id, String suffix) {
+        if (suffix == null) {
+            return 0;
+        }
+        // FNV-1a over the characters of the prefix, then of the suffix
+        long hash = 0xcbf29ce484222325L;
+        String prefix = get(id);
+        if (prefix != null) {
+            for (int i = 0; i < prefix.length(); i++) {
+                hash = (hash ^ prefix.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            hash = (hash ^ suffix.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -16,12 +16,16 @@
 
 package com.google.sample.cast.refplayer.browser;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.libraries.cast.companionlibrary.cast.VideoCastManager;
 import com.google.android.libraries.cast.companionlibrary.cast.callbacks.VideoCastConsumerImpl;
 import com.google.android.libraries.cast.companionlibrary.utils.Utils;
 import com.google.sample.cast.refplayer.R;
+import com.google.sample.cast.refplayer.images.ImageLoader;
 import com.google.sample.cast.refplayer.mediaplayer.LocalPlayerActivity;
+import com.google.sample.cast.refplayer.utils.LogUtils;
 
 import android.content.Intent;
 import android.os.Bundle;
@@ -34,7 +38,6 @@ import android.support.v4.content.Loader;
 import android.support.v4.util.Pair;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -46,13 +49,16 @@ import java.util.List;
  * A fragment to host a list view of the video catalog.
  */
 public class VideoBrowserFragment extends Fragment implements VideoListAdapter.ItemClickListener,
-        LoaderManager.LoaderCallbacks<List<MediaInfo>> {
+        LoaderManager.LoaderCallbacks<List<VideoItem>>, CatalogPager.OnPageLoadedListener,
+        CatalogStore.CatalogHolder {
 
     private static final String TAG = "VideoBrowserFragment";
     private static final String CATALOG_URL =
             "http://commondatastorage.googleapis.com/gtv-videos-bucket/CastVideos/f.json";
     private RecyclerView mRecyclerView;
     private VideoListAdapter mAdapter;
+    private CatalogPager mPager;
+    private ThumbnailPrefetcher mPrefetcher;
     private View mEmptyView;
     private View mLoadingView;
     private VideoCastManager mCastManager;
@@ -73,29 +79,59 @@ public class VideoBrowserFragment extends Fragment implements VideoListAdapter.I
         mRecyclerView = (RecyclerView) getView().findViewById(R.id.list);
         mEmptyView = getView().findViewById(R.id.empty_view);
         mLoadingView = getView().findViewById(R.id.progress_indicator);
-        LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
         layoutManager.setOrientation(LinearLayoutManager.VERTICAL);
         mRecyclerView.setLayoutManager(layoutManager);
-        mAdapter = new VideoListAdapter(this);
+        mAdapter = new VideoListAdapter(getActivity(), this);
         mRecyclerView.setAdapter(mAdapter);
-        getLoaderManager().initLoader(0, null, this);
+        mPager = new CatalogPager(getResources().getInteger(R.integer.catalog_page_size),
+                getResources().getInteger(R.integer.catalog_prefetch_distance), this);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                mPager.onScrolled(layoutManager.findLastVisibleItemPosition());
+            }
+        });
+        mPrefetcher = new ThumbnailPrefetcher(ImageLoader.getInstance(getActivity()), mAdapter,
+                layoutManager, getResources(),
+                getResources().getInteger(R.integer.thumbnail_prefetch_distance));
+        mRecyclerView.addOnScrollListener(mPrefetcher);
+        VideoItemLoader loader = (VideoItemLoader) getLoaderManager().<List<VideoItem>>initLoader(
+                0, null, this);
+        loader.setOnVideoParsedListener(mPager);
+        CatalogStore.registerHolder(this);
         mCastManager = VideoCastManager.getInstance();
         mCastConsumer = new VideoCastConsumerImpl() {
             @Override
             public void onConnected() {
                 super.onConnected();
-                mAdapter.notifyDataSetChanged();
+                mAdapter.notifyConnectionChanged();
             }
 
             @Override
             public void onDisconnected() {
                 super.onDisconnected();
-                mAdapter.notifyDataSetChanged();
+                mAdapter.notifyConnectionChanged();
             }
         };
         mCastManager.addVideoCastConsumer(mCastConsumer);
     }
 
+    @Override
+    public void onDestroyView() {
+        CatalogStore.unregisterHolder(this);
+        VideoItemLoader loader = (VideoItemLoader) getLoaderManager()
+                .<List<VideoItem>>getLoader(0);
+        if (loader != null) {
+            loader.setOnVideoParsedListener(null);
+        }
+        mPrefetcher.cancelAll();
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "Image pipeline: " + ImageLoader.getInstance(getActivity()).getStats());
+        }
+        super.onDestroyView();
+    }
+
     @Override
     public void onDetach() {
         mCastManager.removeVideoCastConsumer(mCastConsumer);
@@ -103,10 +139,11 @@ public class VideoBrowserFragment extends Fragment implements VideoListAdapter.I
     }
 
     @Override
-    public void itemClicked(View view, MediaInfo item, int position) {
+    public void itemClicked(View view, VideoItem item, int position) {
+        MediaInfo media = item.toMediaInfo();
         if (view instanceof ImageButton) {
-            Log.d(TAG, "menu was clicked");
-            com.google.sample.cast.refplayer.utils.Utils.showQueuePopup(getActivity(), view, item);
+            LOGD(TAG, "menu was clicked");
+            com.google.sample.cast.refplayer.utils.Utils.showQueuePopup(getActivity(), view, media);
         } else {
             String transitionName = getString(R.string.transition_image);
             VideoListAdapter.ViewHolder viewHolder =
@@ -117,27 +154,71 @@ public class VideoBrowserFragment extends Fragment implements VideoListAdapter.I
                     .makeSceneTransitionAnimation(getActivity(), imagePair);
 
             Intent intent = new Intent(getActivity(), LocalPlayerActivity.class);
-            intent.putExtra("media", Utils.mediaInfoToBundle(item));
+            intent.putExtra("media", Utils.mediaInfoToBundle(media));
             intent.putExtra("shouldStart", false);
+            // the player previews the cover art with the very thumbnail that the row shows
+            intent.putExtra("previewUrl", mAdapter.getRowImageUrl(position));
             ActivityCompat.startActivity(getActivity(), intent, options.toBundle());
         }
     }
 
     @Override
-    public Loader<List<MediaInfo>> onCreateLoader(int id, Bundle args) {
+    public Loader<List<VideoItem>> onCreateLoader(int id, Bundle args) {
         return new VideoItemLoader(getActivity(), CATALOG_URL);
     }
 
     @Override
-    public void onLoadFinished(Loader<List<MediaInfo>> loader, List<MediaInfo> data) {
-        mAdapter.setData(data);
+    public void onLoadFinished(Loader<List<VideoItem>> loader, List<VideoItem> data) {
+        if (data != null) {
+            mPager.setCatalog(data);
+        }
         mLoadingView.setVisibility(View.GONE);
         mEmptyView.setVisibility(null == data || data.isEmpty() ? View.VISIBLE : View.GONE);
     }
 
     @Override
-    public void onLoaderReset(Loader<List<MediaInfo>> loader) {
+    public void onLoaderReset(Loader<List<VideoItem>> loader) {
         mAdapter.setData(null);
     }
 
+    @Override
+    public int releaseMaterialized() {
+        // the pages of a mapped catalog are read from it as they are bound, so only what the
+        // rows kept of it is left to release
+        return mAdapter.trimRowCache();
+    }
+
+    @Override
+    public void onShrunkToSnapshot(List<VideoItem> items, CatalogSnapshot snapshot) {
+        // the pager goes first, so that it ignores the snapshot the loader then delivers
+        mPager.replaceCatalog(items, snapshot);
+        VideoItemLoader loader = (VideoItemLoader) getLoaderManager()
+                .<List<VideoItem>>getLoader(0);
+        if (loader != null) {
+            loader.replaceResult(items, snapshot);
+        }
+    }
+
+    @Override
+    public void onCatalogChanged(List<VideoItem> items, int count) {
+        mAdapter.setData(items, count);
+        if (count > 0) {
+            mLoadingView.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public void onPageLoaded(int count) {
+        mAdapter.showRows(count);
+        mLoadingView.setVisibility(View.GONE);
+    }
+
+    @Override
+    public void onCatalogReplaced(List<VideoItem> items) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView
+                .getLayoutManager();
+        mAdapter.replaceData(items, layoutManager.findFirstVisibleItemPosition(),
+                layoutManager.findLastVisibleItemPosition());
+    }
+
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import com.google.android.gms.cast.MediaInfo;
+import com.google.android.gms.cast.MediaTrack;
+import com.google.sample.cast.refplayer.images.ImageVariantSelector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A lightweight, immutable entry of the catalog. It only holds the strings that the browse list
+ * needs plus what is required to build the full {@link MediaInfo}, which is done on demand by
+ * {@link #toMediaInfo()} when the item is played, queued or opened. Urls are kept as a prefix id
+ * into the {@link UrlPrefixTable} of the catalog and a suffix.
+ * <p>
+ * Besides the thumbnail and the large image that go into the {@link MediaInfo}, the item keeps
+ * every size its artwork is published in, so that views can load the variant that suits them
+ * through {@link #getImageUrl(ImageVariantSelector, int, int)}.
+ */
+public class VideoItem {
+
+    private final UrlPrefixTable mPrefixes;
+    private final String mTitle;
+    private final String mStudio;
+    private final String mDescription;
+    private final int mDuration;
+    private final int mContentPrefix;
+    private final String mContentSuffix;
+    private final String mMimeType;
+    private final int mImagePrefix;
+    private final String mImageSuffix;
+    private final String mBigImageSuffix;
+    private final List<Image> mImages;
+    private final List<Track> mTracks;
+
+    public VideoItem(UrlPrefixTable prefixes, String title, String studio, String description,
+            int duration, int contentPrefix, String contentSuffix, String mimeType,
+            int imagePrefix, String imageSuffix, String bigImageSuffix, List<Image> images,
+            List<Track> tracks) {
+        mPrefixes = prefixes;
+        mTitle = title;
+        mStudio = studio;
+        mDescription = description;
+        mDuration = duration;
+        mContentPrefix = contentPrefix;
+        mContentSuffix = contentSuffix;
+        mMimeType = mimeType;
+        mImagePrefix = imagePrefix;
+        mImageSuffix = imageSuffix;
+        mBigImageSuffix = bigImageSuffix;
+        mImages = images == null ? Collections.<Image>emptyList() : images;
+        mTracks = tracks == null ? Collections.<Track>emptyList() : tracks;
+    }
+
+    /**
+     * Returns the id of this item, which is the url of its stream.
+     */
+    public String getContentId() {
+        return mPrefixes.resolve(mContentPrefix, mContentSuffix);
+    }
+
+    /**
+     * Returns a hash of the content id, which lists use as the stable id of the item.
+     */
+    public long getStableId() {
+        return mPrefixes.hash(mContentPrefix, mContentSuffix);
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getStudio() {
+        return mStudio;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    /**
+     * Returns the duration of the stream, in seconds.
+     */
+    public int getDuration() {
+        return mDuration;
+    }
+
+    public String getMimeType() {
+        return mMimeType;
+    }
+
+    public String getImageUrl() {
+        return mPrefixes.resolve(mImagePrefix, mImageSuffix);
+    }
+
+    public String getBigImageUrl() {
+        return mPrefixes.resolve(mImagePrefix, mBigImageSuffix);
+    }
+
+    /**
+     * Returns the url of the variant of the artwork that {@code selector} prefers for a view of
+     * {@code width} by {@code height} pixels, or the thumbnail if the sizes of the artwork are not
+     * known.
+     */
+    public String getImageUrl(ImageVariantSelector selector, int width, int height) {
+        Image best = null;
+        for (int i = 0; i < mImages.size(); i++) {
+            Image image = mImages.get(i);
+            if (best == null || selector.isPreferred(image.mWidth, image.mHeight, best.mWidth,
+                    best.mHeight, width, height)) {
+                best = image;
+            }
+        }
+        return best == null ? getImageUrl() : mPrefixes.resolve(mImagePrefix, best.mSuffix);
+    }
+
+    /**
+     * Returns every variant of the artwork.
+     */
+    public List<Image> getImages() {
+        return mImages;
+    }
+
+    public List<Track> getTracks() {
+        return mTracks;
+    }
+
+    UrlPrefixTable getPrefixes() {
+        return mPrefixes;
+    }
+
+    int getContentPrefix() {
+        return mContentPrefix;
+    }
+
+    String getContentSuffix() {
+        return mContentSuffix;
+    }
+
+    int getImagePrefix() {
+        return mImagePrefix;
+    }
+
+    String getImageSuffix() {
+        return mImageSuffix;
+    }
+
+    String getBigImageSuffix() {
+        return mBigImageSuffix;
+    }
+
+    /**
+     * Builds the full {@link MediaInfo} for this item. A new instance is returned on every call,
+     * so callers should hold on to it rather than call this method repeatedly.
+     */
+    public MediaInfo toMediaInfo() {
+        List<MediaTrack> mediaTracks = null;
+        if (!mTracks.isEmpty()) {
+            mediaTracks = new ArrayList<>(mTracks.size());
+            for (Track track : mTracks) {
+                mediaTracks.add(VideoProvider.buildTrack(track.mId, track.mType, track.mSubType,
+                        mPrefixes.resolve(track.mContentPrefix, track.mContentSuffix),
+                        track.mName, track.mLanguage));
+            }
+        }
+        return VideoProvider.buildMediaInfo(mTitle, mStudio, mDescription, mDuration,
+                getContentId(), mMimeType, getImageUrl(), getBigImageUrl(), mediaTracks);
+    }
+
+    /**
+     * One size of the artwork of a video. Its url is relative to the image prefix of the video.
+     */
+    public static class Image {
+
+        private final int mWidth;
+        private final int mHeight;
+        private final String mSuffix;
+
+        public Image(int width, int height, String suffix) {
+            mWidth = width;
+            mHeight = height;
+            mSuffix = suffix;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        public String getSuffix() {
+            return mSuffix;
+        }
+    }
+
+    /**
+     * The raw description of a media track, as it appears in the catalog.
+     */
+    public static class Track {
+
+        private final long mId;
+        private final String mType;
+        private final String mSubType;
+        private final int mContentPrefix;
+        private final String mContentSuffix;
+        private final String mName;
+        private final String mLanguage;
+
+        public Track(long id, String type, String subType, int contentPrefix,
+                String contentSuffix, String name, String language) {
+            mId = id;
+            mType = type;
+            mSubType = subType;
+            mContentPrefix = contentPrefix;
+            mContentSuffix = contentSuffix;
+            mName = name;
+            mLanguage = language;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public String getType() {
+            return mType;
+        }
+
+        public String getSubType() {
+            return mSubType;
+        }
+
+        public int getContentPrefix() {
+            return mContentPrefix;
+        }
+
+        public String getContentSuffix() {
+            return mContentSuffix;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getLanguage() {
+            return mLanguage;
+        }
+    }
+}
@@ -16,31 +16,147 @@
 
 package com.google.sample.cast.refplayer.browser;
 
-import com.google.android.gms.cast.MediaInfo;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGE;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGW;
 
 import android.content.Context;
 import android.support.v4.content.AsyncTaskLoader;
-import android.util.Log;
 
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
-public class VideoItemLoader extends AsyncTaskLoader<List<MediaInfo>> {
+/**
+ * Loads the catalog. When a copy of the catalog is available on disk, that copy is delivered
+ * first and a conditional request is then issued in the background to revalidate it; if the
+ * catalog has changed on the server, the fresh list is delivered as a second result.
+ * <p>
+ * While the catalog is parsed for the first time, each video can also be handed to an
+ * {@link VideoProvider.OnVideoParsedListener} as soon as it is read, so that the browser can show
+ * the first rows before the whole catalog has been downloaded.
+ */
+public class VideoItemLoader extends AsyncTaskLoader<List<VideoItem>> {
 
     private static final String TAG = "VideoItemLoader";
     private final String mUrl;
+    private final CatalogCache mCache;
+    private volatile boolean mRevalidatePending;
+    private volatile boolean mRevalidating;
+    private List<VideoItem> mLastResult;
+    private volatile VideoProvider.OnVideoParsedListener mOnVideoParsedListener;
 
     public VideoItemLoader(Context context, String url) {
         super(context);
         this.mUrl = url;
+        mCache = new CatalogCache(context);
+    }
+
+    /**
+     * Sets the listener that receives the videos of the catalog while it is being parsed. It is
+     * called on the loader thread, and not at all when the catalog is already in memory or in a
+     * snapshot, nor when it is revalidated.
+     */
+    public void setOnVideoParsedListener(VideoProvider.OnVideoParsedListener listener) {
+        mOnVideoParsedListener = listener;
     }
 
     @Override
-    public List<MediaInfo> loadInBackground() {
+    public List<VideoItem> loadInBackground() {
         try {
-            return VideoProvider.buildMedia(mUrl);
+            if (!mRevalidating) {
+                List<VideoItem> cached = VideoProvider.getCachedMedia();
+                if (cached != null) {
+                    return cached;
+                }
+                if (mCache.hasCachedCopy(mUrl)) {
+                    List<VideoItem> snapshot = VideoProvider.buildMedia(
+                            mCache.getSnapshotFile(mUrl));
+                    if (snapshot != null) {
+                        mRevalidatePending = true;
+                        return snapshot;
+                    }
+                    try {
+                        List<VideoItem> stale = VideoProvider.buildMedia(mCache.openCachedCopy(),
+                                mCache.getSnapshotFile(mUrl), mOnVideoParsedListener);
+                        mRevalidatePending = true;
+                        return stale;
+                    } catch (Exception e) {
+                        // a conditional request would only confirm the broken copy; the videos
+                        // parsed before it broke have been handed out already, so the fresh
+                        // catalog is only delivered once it is complete, as it replaces them
+                        LOGW(TAG, "Failed to read the cached catalog, fetching it again", e);
+                        mCache.invalidate();
+                        return revalidate(null);
+                    }
+                }
+            }
+            return revalidate(mRevalidating ? null : mOnVideoParsedListener);
+        } catch (Exception e) {
+            LOGE(TAG, "Failed to fetch media data", e);
+            return mRevalidating ? mLastResult : null;
+        } finally {
+            mRevalidating = false;
+        }
+    }
+
+    private List<VideoItem> revalidate(VideoProvider.OnVideoParsedListener listener)
+            throws Exception {
+        StreamingReader reader = listener == null ? null : new StreamingReader(listener);
+        boolean modified;
+        try {
+            modified = mCache.refresh(mUrl, reader);
         } catch (Exception e) {
-            Log.e(TAG, "Failed to fetch media data", e);
-            return null;
+            LOGW(TAG, "Failed to refresh the catalog cache, fetching without it", e);
+            return VideoProvider.buildMedia(mUrl);
+        }
+        if (!modified) {
+            List<VideoItem> current = VideoProvider.getCachedMedia();
+            if (current != null) {
+                return current;
+            }
+        }
+        if (reader != null && reader.mResult != null) {
+            // parsed while it was downloaded; the snapshot can only be written now that the
+            // cached copy is in place
+            VideoProvider.writeSnapshot(mCache.getSnapshotFile(mUrl), reader.mResult);
+            return reader.mResult;
+        }
+        try {
+            return VideoProvider.buildMedia(mCache.openCachedCopy(),
+                    mCache.getSnapshotFile(mUrl));
+        } catch (IOException | JSONException e) {
+            if (modified) {
+                throw e;
+            }
+            // the server confirmed a copy that does not parse; drop it and fetch it again, which
+            // is now an unconditional request
+            LOGW(TAG, "Failed to read the cached catalog, fetching it again", e);
+            mCache.invalidate();
+            return revalidate(listener);
+        }
+    }
+
+    /**
+     * Delivers {@code snapshot} in place of the last result if that is {@code items}, which holds
+     * the same entries, so that neither the loader nor its manager references them anymore.
+     */
+    public void replaceResult(List<VideoItem> items, CatalogSnapshot snapshot) {
+        if (mLastResult == items) {
+            deliverResult(snapshot);
+        }
+    }
+
+    @Override
+    public void deliverResult(List<VideoItem> data) {
+        mLastResult = data;
+        super.deliverResult(data);
+        if (mRevalidatePending && isStarted()) {
+            // stale-while-revalidate: the cached copy is on screen, now check it with the server
+            mRevalidatePending = false;
+            mRevalidating = true;
+            forceLoad();
         }
     }
 
@@ -50,6 +166,28 @@ public class VideoItemLoader extends AsyncTaskLoader<List<MediaInfo>> {
         forceLoad();
     }
 
+    /**
+     * Builds the catalog from the document while {@link CatalogCache} downloads it.
+     */
+    private static class StreamingReader implements CatalogCache.CatalogReader {
+
+        private final VideoProvider.OnVideoParsedListener mListener;
+        private List<VideoItem> mResult;
+
+        StreamingReader(VideoProvider.OnVideoParsedListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void read(InputStream in) throws IOException {
+            try {
+                mResult = VideoProvider.buildMedia(in, null, mListener);
+            } catch (JSONException e) {
+                throw new IOException("Malformed catalog", e);
+            }
+        }
+    }
+
     /**
      * Handles a request to stop the Loader.
      */
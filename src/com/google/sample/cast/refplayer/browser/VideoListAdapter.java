@@ -16,12 +16,13 @@
 
 package com.google.sample.cast.refplayer.browser;
 
-import com.google.android.gms.cast.MediaInfo;
-import com.google.android.gms.cast.MediaMetadata;
 import com.google.android.libraries.cast.companionlibrary.cast.VideoCastManager;
 import com.google.sample.cast.refplayer.R;
+import com.google.sample.cast.refplayer.images.ImageLoader;
+import com.google.sample.cast.refplayer.images.ImageVariantSelector;
 
 import android.content.Context;
+import android.os.AsyncTask;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -30,65 +31,135 @@ import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.androidquery.AQuery;
-
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An {@link ArrayAdapter} to populate the list of videos.
  */
 public class VideoListAdapter extends RecyclerView.Adapter<VideoListAdapter.ViewHolder> {
 
-    private static final float mAspectRatio = 9f / 16f;
+    // payload of a rebind that only updates what depends on the connection to a cast device
+    private static final Object PAYLOAD_CONNECTION = new Object();
+
     private final ItemClickListener mClickListener;
     private final VideoCastManager mCastManager;
-    private List<MediaInfo> videos;
+    private final ImageVariantSelector mImageSelector;
+    private final VideoRowCache mRowCache;
+    private List<VideoItem> videos;
+    // the number of rows of the list that are shown
+    private int mCount;
+    private long[] mItemIds;
+    // the stable ids of the rows that are shown, sorted, to find the ids that repeat
+    private long[] mSortedIds;
+    private DiffTask mDiffTask;
 
-    public VideoListAdapter(ItemClickListener clickListener) {
+    public VideoListAdapter(Context context, ItemClickListener clickListener) {
         mClickListener = clickListener;
         mCastManager = VideoCastManager.getInstance();
+        mImageSelector = ImageVariantSelector.getInstance(context);
+        mRowCache = new VideoRowCache(mImageSelector,
+                context.getResources().getDimensionPixelSize(R.dimen.browse_row_image_width),
+                context.getResources().getDimensionPixelSize(R.dimen.browse_row_image_height));
+        setHasStableIds(true);
     }
 
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup viewGroup, int viewType) {
         Context context = viewGroup.getContext();
         View parent = LayoutInflater.from(context).inflate(R.layout.browse_row, viewGroup, false);
-        return ViewHolder.newInstance(parent);
-    }
-
-    @Override
-    public void onBindViewHolder(ViewHolder viewHolder, final int position) {
-        final MediaInfo item = videos.get(position);
-        MediaMetadata mm = item.getMetadata();
-        viewHolder.setTitle(mm.getString(MediaMetadata.KEY_TITLE));
-        viewHolder.setDescription(mm.getString(MediaMetadata.KEY_SUBTITLE));
-        viewHolder.setImage(mm.getImages().get(0).getUrl().toString());
-        viewHolder.mMenu.setOnClickListener(new View.OnClickListener() {
+        final ViewHolder viewHolder = ViewHolder.newInstance(parent);
+        // one listener per row for its whole life rather than new ones on every bind; the
+        // position is only looked up when the row is clicked
+        View.OnClickListener listener = new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                mClickListener.itemClicked(v, item, position);
+                int position = viewHolder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    mClickListener.itemClicked(v, videos.get(position), position);
+                }
             }
-        });
+        };
+        viewHolder.mMenu.setOnClickListener(listener);
+        viewHolder.mImgView.setOnClickListener(listener);
+        viewHolder.mTextContainer.setOnClickListener(listener);
+        return viewHolder;
+    }
 
-        viewHolder.mImgView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                mClickListener.itemClicked(v, item, position);
-            }
-        });
+    @Override
+    public void onBindViewHolder(ViewHolder viewHolder, int position) {
+        // everything comes from the row cache, which reads a mapped snapshot without
+        // materializing the item and builds nothing for a row that was bound before
+        viewHolder.setTitle(mRowCache.getTitle(position));
+        viewHolder.setDescription(mRowCache.getStudio(position));
+        viewHolder.setImage(mRowCache.getImageUrl(position), mRowCache.getImageKey(position));
+        bindConnectionState(viewHolder);
+    }
 
-        viewHolder.mTextContainer.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                mClickListener.itemClicked(v, item, position);
-            }
-        });
+    @Override
+    public void onBindViewHolder(ViewHolder viewHolder, int position, List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(viewHolder, position);
+        } else {
+            // the connection state is the only thing that is ever rebound on its own
+            bindConnectionState(viewHolder);
+        }
+    }
+
+    private void bindConnectionState(ViewHolder viewHolder) {
         viewHolder.mMenu.setVisibility(mCastManager.isConnected() ? View.VISIBLE : View.GONE);
     }
 
+    /**
+     * Updates the rows after the application connected to or disconnected from a cast device.
+     * Only the overflow menu of the rows that are shown is updated, the other rows pick up the
+     * new state when they are bound.
+     */
+    public void notifyConnectionChanged() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_CONNECTION);
+    }
+
+    /**
+     * Forgets what was kept of the rows that were bound, and returns how many rows there were.
+     */
+    public int trimRowCache() {
+        return mRowCache.clear();
+    }
+
+    @Override
+    public void onViewRecycled(ViewHolder viewHolder) {
+        viewHolder.recycleImage();
+    }
+
     @Override
     public int getItemCount() {
-        return videos == null ? 0 : videos.size();
+        return mCount;
+    }
+
+    /**
+     * Returns the url of the thumbnail that the row at {@code position} shows, which is in the
+     * memory cache of the {@link ImageLoader} under the size of a row thumbnail once it has been
+     * loaded.
+     */
+    public String getRowImageUrl(int position) {
+        return mRowCache.getImageUrl(position);
+    }
+
+    /**
+     * Returns the url of the variant of the artwork of the video at {@code position} that best
+     * suits a thumbnail of {@code width} by {@code height} pixels.
+     */
+    public String getImageUrl(int position, int width, int height) {
+        if (width == mRowCache.getImageWidth() && height == mRowCache.getImageHeight()) {
+            return mRowCache.getImageUrl(position);
+        }
+        if (videos instanceof CatalogSnapshot) {
+            return ((CatalogSnapshot) videos).getImageUrl(position, mImageSelector, width,
+                    height);
+        }
+        return videos.get(position).getImageUrl(mImageSelector, width, height);
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
@@ -96,10 +167,15 @@ public class VideoListAdapter extends RecyclerView.Adapter<VideoListAdapter.View
         private final View mParent;
         private final View mMenu;
         private final View mTextContainer;
-        private AQuery mAquery;
+        private final ImageLoader mImageLoader;
+        private final int mImageWidth;
+        private final int mImageHeight;
         private TextView mTitleView;
         private TextView mDescriptionView;
         private ImageView mImgView;
+        // the text shown, so that binding the same again leaves the views alone
+        private String mTitle;
+        private String mDescription;
 
         public static ViewHolder newInstance(View parent) {
             ImageView imgView = (ImageView) parent.findViewById(R.id.imageView1);
@@ -107,13 +183,11 @@ public class VideoListAdapter extends RecyclerView.Adapter<VideoListAdapter.View
             TextView descriptionView = (TextView) parent.findViewById(R.id.textView2);
             View menu = parent.findViewById(R.id.menu);
             View textContainer = parent.findViewById(R.id.text_container);
-            AQuery aQuery = new AQuery(parent);
-            return new ViewHolder(parent, imgView, textContainer, titleView, descriptionView, menu,
-                    aQuery);
+            return new ViewHolder(parent, imgView, textContainer, titleView, descriptionView, menu);
         }
 
         private ViewHolder(View parent, ImageView imgView, View textContainer, TextView titleView,
-                TextView descriptionView, View menu, AQuery aQuery) {
+                TextView descriptionView, View menu) {
             super(parent);
             mParent = parent;
             mImgView = imgView;
@@ -121,20 +195,40 @@ public class VideoListAdapter extends RecyclerView.Adapter<VideoListAdapter.View
             mTitleView = titleView;
             mDescriptionView = descriptionView;
             mMenu = menu;
-            mAquery = aQuery;
+            mImageLoader = ImageLoader.getInstance(parent.getContext());
+            mImageWidth = parent.getResources().getDimensionPixelSize(
+                    R.dimen.browse_row_image_width);
+            mImageHeight = parent.getResources().getDimensionPixelSize(
+                    R.dimen.browse_row_image_height);
         }
 
         public void setTitle(String title) {
-            mTitleView.setText(title);
+            if (title != mTitle) {
+                mTitle = title;
+                mTitleView.setText(title);
+            }
         }
 
         public void setDescription(String description) {
-            mDescriptionView.setText(description);
+            if (description != mDescription) {
+                mDescription = description;
+                mDescriptionView.setText(description);
+            }
+        }
+
+        /**
+         * Shows the image at {@code imgUrl}, whose memory cache key is {@code key}.
+         */
+        public void setImage(String imgUrl, String key) {
+            mImageLoader.load(imgUrl, key, mImgView, mImageWidth, mImageHeight,
+                    R.drawable.default_video);
         }
 
-        public void setImage(String imgUrl) {
-            mAquery.id(mImgView).width(114).image(imgUrl,
-                    true, true, 0, R.drawable.default_video, null, 0, mAspectRatio);
+        /**
+         * Hands the thumbnail back to the image loader so that its bitmap can be reused.
+         */
+        public void recycleImage() {
+            mImageLoader.recycle(mImgView);
         }
 
         public void setOnClickListener(View.OnClickListener listener) {
@@ -146,18 +240,219 @@ public class VideoListAdapter extends RecyclerView.Adapter<VideoListAdapter.View
         }
     }
 
-    public void setData(List<MediaInfo> data) {
+    /**
+     * Replaces the list of videos by the whole of {@code data}, see
+     * {@link #setData(List, int)}.
+     */
+    public void setData(List<VideoItem> data) {
+        setData(data, data == null ? 0 : data.size());
+    }
+
+    /**
+     * Shows the first {@code count} rows of {@code data} in place of the rows that are shown.
+     * When rows are already shown, the new ones are diffed against them on a background thread
+     * and only the resulting insertions, removals, moves and changes are notified; the current
+     * rows stay in place until the diff is ready.
+     */
+    public void setData(List<VideoItem> data, int count) {
+        if (data == videos && mDiffTask == null) {
+            showRows(count);
+            return;
+        }
+        if (mDiffTask != null) {
+            mDiffTask.cancel(false);
+            mDiffTask = null;
+        }
+        if (mCount == 0 || data == null || count == 0) {
+            videos = data;
+            mCount = count;
+            mItemIds = computeItemIds(data, count);
+            mSortedIds = sortStableIds(data, count);
+            mRowCache.reset(data);
+            notifyDataSetChanged();
+            return;
+        }
+        mDiffTask = new DiffTask(videos.subList(0, mCount), data, count);
+        mDiffTask.execute();
+    }
+
+    /**
+     * Shows the rows of the list that is shown up to {@code count}. Rows are only ever appended
+     * to that list, so the rows that are shown are left alone and the new ones are notified as
+     * inserted.
+     */
+    public void showRows(int count) {
+        if (mDiffTask != null) {
+            // the rows are added to the list that is being diffed in, once it is shown
+            mDiffTask.mShowCount = Math.max(mDiffTask.mShowCount, count);
+            return;
+        }
+        if (videos == null || count <= mCount) {
+            return;
+        }
+        int start = mCount;
+        appendItemIds(count);
+        mCount = count;
+        notifyItemRangeInserted(start, count - start);
+    }
+
+    /**
+     * Backs the rows that are shown by {@code data}, which holds the same entries in the same
+     * order as the list shown, such as the mapped snapshot of an in-memory catalog. Nothing is
+     * diffed: the rows keep their ids and only the visible ones, from {@code firstVisible} to
+     * {@code lastVisible}, are bound again; the other rows read {@code data} once they are bound.
+     */
+    public void replaceData(List<VideoItem> data, int firstVisible, int lastVisible) {
+        if (mDiffTask != null) {
+            // the rows are about to be replaced by those of the list being diffed in
+            setData(data, mDiffTask.mShowCount);
+            return;
+        }
         videos = data;
-        notifyDataSetChanged();
+        mRowCache.reset(data);
+        lastVisible = Math.min(lastVisible, mCount - 1);
+        if (firstVisible != RecyclerView.NO_POSITION && lastVisible >= firstVisible) {
+            notifyItemRangeChanged(firstVisible, lastVisible - firstVisible + 1);
+        }
+    }
+
+    private class DiffTask extends AsyncTask<Void, Void, CatalogDiff> {
+
+        private final List<VideoItem> mOldRows;
+        private final List<VideoItem> mNewData;
+        private final int mNewCount;
+        private long[] mNewItemIds;
+        private long[] mNewSortedIds;
+        // the rows to show once the diff has been applied, main thread only
+        private int mShowCount;
+
+        DiffTask(List<VideoItem> oldRows, List<VideoItem> newData, int newCount) {
+            mOldRows = oldRows;
+            mNewData = newData;
+            mNewCount = newCount;
+            mShowCount = newCount;
+        }
+
+        @Override
+        protected CatalogDiff doInBackground(Void... params) {
+            mNewItemIds = computeItemIds(mNewData, mNewCount);
+            mNewSortedIds = sortStableIds(mNewData, mNewCount);
+            return CatalogDiff.compute(mOldRows, mNewData.subList(0, mNewCount));
+        }
+
+        @Override
+        protected void onPostExecute(CatalogDiff diff) {
+            if (mDiffTask != this) {
+                return;
+            }
+            mDiffTask = null;
+            videos = mNewData;
+            mCount = mNewCount;
+            mItemIds = mNewItemIds;
+            mSortedIds = mNewSortedIds;
+            mRowCache.reset(mNewData);
+            diff.dispatchTo(VideoListAdapter.this);
+            showRows(mShowCount);
+        }
     }
 
     public interface ItemClickListener {
 
-        void itemClicked(View v, MediaInfo item, int position);
+        void itemClicked(View v, VideoItem item, int position);
     }
 
+    /**
+     * Returns an id derived from the content id of the video, so that a video keeps its id, and
+     * its row, when the list is replaced.
+     */
     @Override
     public long getItemId(int position) {
-        return super.getItemId(position);
+        return mItemIds[position];
+    }
+
+    /**
+     * Returns the ids of the first {@code count} rows of {@code data}: the hash of the content id
+     * of each video, and for a content id that is listed more than once, the hash of the content
+     * id together with the number of times it was listed before, so that no two rows share an
+     * id. Distinct ids can still collide as any 64 bit hash can, which is unlikely enough to be
+     * ignored.
+     */
+    private static long[] computeItemIds(List<VideoItem> data, int count) {
+        if (data == null) {
+            return null;
+        }
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = getStableId(data, i);
+        }
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        if (hasDuplicates(sorted)) {
+            Map<Long, Integer> occurrences = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                Integer occurrence = occurrences.get(ids[i]);
+                occurrences.put(ids[i], occurrence == null ? 1 : occurrence + 1);
+                if (occurrence != null) {
+                    // one more step of the FNV-1a hash of the content id
+                    ids[i] = (ids[i] ^ occurrence) * 0x100000001b3L;
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Adds the ids of the rows from {@link #mCount} up to {@code count}. Unless one of them
+     * repeats a content id that is already shown, which takes the ids of every row to work out,
+     * only the new rows are hashed, and merged into {@link #mSortedIds}.
+     */
+    private void appendItemIds(int count) {
+        long[] added = new long[count - mCount];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = getStableId(videos, mCount + i);
+        }
+        long[] ids = Arrays.copyOf(mItemIds, count);
+        System.arraycopy(added, 0, ids, mCount, added.length);
+        Arrays.sort(added);
+        long[] sorted = new long[count];
+        boolean duplicates = hasDuplicates(added);
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < count; k++) {
+            if (j == added.length || (i < mCount && mSortedIds[i] <= added[j])) {
+                duplicates |= j < added.length && mSortedIds[i] == added[j];
+                sorted[k] = mSortedIds[i++];
+            } else {
+                sorted[k] = added[j++];
+            }
+        }
+        // the rows that are shown keep their ids either way, as the ids of the repeated content
+        // ids only depend on the rows before them
+        mItemIds = duplicates ? computeItemIds(videos, count) : ids;
+        mSortedIds = sorted;
+    }
+
+    private static long[] sortStableIds(List<VideoItem> data, int count) {
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = getStableId(data, i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static long getStableId(List<VideoItem> data, int position) {
+        return data instanceof CatalogSnapshot
+                ? ((CatalogSnapshot) data).getStableId(position)
+                : data.get(position).getStableId();
+    }
+
+    private static boolean hasDuplicates(long[] sorted) {
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -16,26 +16,36 @@
 
 package com.google.sample.cast.refplayer.browser;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGE;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGW;
+
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.gms.cast.MediaMetadata;
 import com.google.android.gms.cast.MediaTrack;
 import com.google.android.gms.common.images.WebImage;
+import com.google.sample.cast.refplayer.utils.LogUtils;
 
+import android.annotation.TargetApi;
 import android.net.Uri;
-import android.util.Log;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URLConnection;
+import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -66,30 +76,50 @@ public class VideoProvider {
     private static final String TAG_TRACK_LANGUAGE = "language";
     private static final String TAG_THUMB = "image-480x270"; // "thumb";
     private static final String TAG_IMG_780_1200 = "image-780x1200";
+    // every "image-<width>x<height>" field is a variant of the artwork
+    private static final String TAG_IMAGE_VARIANT = "image-";
     private static final String TAG_TITLE = "title";
 
     public static final String KEY_DESCRIPTION = "description";
 
     private static final String TARGET_FORMAT = TAG_HLS;
-    private static List<MediaInfo> mediaList;
+    private static volatile int sParallelism = 1;
+
+    /**
+     * A callback that receives each {@link VideoItem} as soon as the streaming parser has read
+     * enough of the catalog to build it.
+     */
+    public interface OnVideoParsedListener {
+
+        void onVideoParsed(VideoItem video);
+    }
+
+    /**
+     * Sets the number of threads that parse the categories of the catalog in parallel. With a
+     * parallelism of 1, the default, the catalog is streamed on the calling thread. A higher
+     * parallelism only pays off for catalogs with many large categories, since the categories
+     * that wait for a thread are held in memory.
+     */
+    public static void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        sParallelism = parallelism;
+    }
+
+    public static int getParallelism() {
+        return sParallelism;
+    }
 
     protected JSONObject parseUrl(String urlString) {
         InputStream is = null;
+        HttpURLConnection urlConnection = null;
         try {
-            java.net.URL url = new java.net.URL(urlString);
-            URLConnection urlConnection = url.openConnection();
-            is = new BufferedInputStream(urlConnection.getInputStream());
-            BufferedReader reader = new BufferedReader(new InputStreamReader(
-                    urlConnection.getInputStream(), "iso-8859-1"), 1024);
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            String json = sb.toString();
-            return new JSONObject(json);
+            urlConnection = CatalogTransport.openConnection(urlString);
+            is = CatalogTransport.getBody(urlConnection);
+            return readJson(is);
         } catch (Exception e) {
-            Log.d(TAG, "Failed to parse the json for media list", e);
+            LOGD(TAG, "Failed to parse the json for media list", e);
             return null;
         } finally {
             if (null != is) {
@@ -99,31 +129,169 @@ public class VideoProvider {
                     // ignore
                 }
             }
+            if (null != urlConnection) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    public static List<VideoItem> buildMedia(String url) throws JSONException {
+
+        CatalogStore.Catalog current = CatalogStore.getCurrent();
+        if (null != current) {
+            return current.getItems();
+        }
+        long start = SystemClock.elapsedRealtime();
+        List<VideoItem> mediaList;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            try {
+                mediaList = streamMedia(url);
+            } catch (IOException | IllegalStateException e) {
+                LOGE(TAG, "Failed to stream the media list, falling back to the json tree", e);
+                mediaList = buildMediaFromTree(new VideoProvider().parseUrl(url));
+            }
+        } else {
+            mediaList = buildMediaFromTree(new VideoProvider().parseUrl(url));
+        }
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "Built " + mediaList.size() + " media items in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return CatalogStore.publish(mediaList).getItems();
+    }
+
+    /**
+     * Builds the media list from a catalog document that has already been fetched, for example
+     * the copy kept by {@link CatalogCache}, and publishes it to the {@link CatalogStore}. On success, a
+     * {@link CatalogSnapshot} of the list is written to {@code snapshotFile} so that the next cold
+     * start can skip parsing. The stream is closed when this method returns.
+     */
+    public static List<VideoItem> buildMedia(InputStream is, File snapshotFile)
+            throws IOException, JSONException {
+        return buildMedia(is, snapshotFile, null);
+    }
+
+    /**
+     * Same as {@link #buildMedia(InputStream, File)}, but also hands every video to
+     * {@code listener} as soon as it has been parsed, on the calling thread. The catalog is
+     * streamed sequentially when a listener is given, so that the first videos arrive as early as
+     * possible.
+     */
+    public static List<VideoItem> buildMedia(InputStream is, File snapshotFile,
+            final OnVideoParsedListener listener) throws IOException, JSONException {
+        long start = SystemClock.elapsedRealtime();
+        final List<VideoItem> list = new ArrayList<>();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && sParallelism > 1
+                    && listener == null) {
+                list.addAll(new ParallelCatalogParser(sParallelism).parse(is));
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                streamMedia(is, new OnVideoParsedListener() {
+                    @Override
+                    public void onVideoParsed(VideoItem video) {
+                        list.add(video);
+                        if (listener != null) {
+                            listener.onVideoParsed(video);
+                        }
+                    }
+                });
+            } else {
+                list.addAll(buildMediaFromTree(readJson(is)));
+                if (listener != null) {
+                    for (VideoItem video : list) {
+                        listener.onVideoParsed(video);
+                    }
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed catalog", e);
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "Built " + list.size() + " media items in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        List<VideoItem> items = CatalogStore.publish(list).getItems();
+        if (snapshotFile != null) {
+            writeSnapshot(snapshotFile, items);
+        }
+        return items;
+    }
+
+    /**
+     * Writes a {@link CatalogSnapshot} of {@code items} to {@code snapshotFile}. A failure is only
+     * logged, since the snapshot is merely an optimization.
+     */
+    static void writeSnapshot(File snapshotFile, List<VideoItem> items) {
+        try {
+            CatalogSnapshot.write(snapshotFile, items);
+            CatalogStore.setSnapshotFile(items, snapshotFile);
+        } catch (IOException e) {
+            LOGW(TAG, "Failed to write the catalog snapshot", e);
         }
     }
 
-    public static List<MediaInfo> buildMedia(String url) throws JSONException {
+    /**
+     * Maps the {@link CatalogSnapshot} in {@code snapshotFile} and publishes it to the
+     * {@link CatalogStore}.
+     * Returns {@code null} if the snapshot is missing, outdated or corrupt.
+     */
+    public static List<VideoItem> buildMedia(File snapshotFile) {
+        long start = SystemClock.elapsedRealtime();
+        CatalogSnapshot snapshot = CatalogSnapshot.open(snapshotFile);
+        if (snapshot == null) {
+            return null;
+        }
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "Mapped " + snapshot.size() + " media items in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+        return CatalogStore.publish(snapshot).getItems();
+    }
+
+    /**
+     * Returns the catalog that has already been built in this process, or {@code null} if there
+     * is none yet.
+     */
+    public static List<VideoItem> getCachedMedia() {
+        CatalogStore.Catalog current = CatalogStore.getCurrent();
+        return current == null ? null : current.getItems();
+    }
 
-        if (null != mediaList) {
-            return mediaList;
+    static JSONObject readJson(InputStream is) throws IOException, JSONException {
+        Reader reader = new InputStreamReader(is, "UTF-8");
+        StringBuilder sb = new StringBuilder(CatalogTransport.BUFFER_SIZE);
+        char[] buffer = new char[CatalogTransport.BUFFER_SIZE / 2];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, read);
         }
-        Map<String, String> urlPrefixMap = new HashMap<>();
-        mediaList = new ArrayList<>();
-        JSONObject jsonObj = new VideoProvider().parseUrl(url);
+        return new JSONObject(sb.toString());
+    }
+
+    static List<VideoItem> buildMediaFromTree(JSONObject jsonObj) throws JSONException {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        Map<String, Integer> urlPrefixMap = new HashMap<>();
+        List<VideoItem> mediaList = new ArrayList<>();
         JSONArray categories = jsonObj.getJSONArray(TAG_CATEGORIES);
         if (null != categories) {
             for (int i = 0; i < categories.length(); i++) {
                 JSONObject category = categories.getJSONObject(i);
-                urlPrefixMap.put(TAG_HLS, category.getString(TAG_HLS));
-                urlPrefixMap.put(TAG_DASH, category.getString(TAG_DASH));
-                urlPrefixMap.put(TAG_MP4, category.getString(TAG_MP4));
-                urlPrefixMap.put(TAG_IMAGES, category.getString(TAG_IMAGES));
-                urlPrefixMap.put(TAG_TRACKS, category.getString(TAG_TRACKS));
+                urlPrefixMap.put(TAG_HLS, prefixes.intern(category.getString(TAG_HLS)));
+                urlPrefixMap.put(TAG_DASH, prefixes.intern(category.getString(TAG_DASH)));
+                urlPrefixMap.put(TAG_MP4, prefixes.intern(category.getString(TAG_MP4)));
+                urlPrefixMap.put(TAG_IMAGES, prefixes.intern(category.getString(TAG_IMAGES)));
+                urlPrefixMap.put(TAG_TRACKS, prefixes.intern(category.getString(TAG_TRACKS)));
                 category.getString(TAG_NAME);
                 JSONArray videos = category.getJSONArray(TAG_VIDEOS);
                 if (null != videos) {
                     for (int j = 0; j < videos.length(); j++) {
-                        String videoUrl = null;
+                        String videoSuffix = null;
                         String mimeType = null;
                         JSONObject video = videos.getJSONObject(j);
                         String subTitle = video.getString(TAG_SUBTITLE);
@@ -134,40 +302,51 @@ public class VideoProvider {
                         for (int k = 0; k < videoSpecs.length(); k++) {
                             JSONObject videoSpec = videoSpecs.getJSONObject(k);
                             if (TARGET_FORMAT.equals(videoSpec.getString(TAG_VIDEO_TYPE))) {
-                                videoUrl = urlPrefixMap.get(TARGET_FORMAT) + videoSpec
-                                        .getString(TAG_VIDEO_URL);
+                                videoSuffix = videoSpec.getString(TAG_VIDEO_URL);
                                 mimeType = videoSpec.getString(TAG_VIDEO_MIME);
                             }
                         }
-                        if (videoUrl == null) {
+                        if (videoSuffix == null) {
                             continue;
                         }
-                        String imageUrl = urlPrefixMap.get(TAG_IMAGES) + video.getString(TAG_THUMB);
-                        String bigImageUrl = urlPrefixMap.get(TAG_IMAGES) + video
-                                .getString(TAG_IMG_780_1200);
+                        String imageSuffix = video.getString(TAG_THUMB);
+                        String bigImageSuffix = video.getString(TAG_IMG_780_1200);
+                        List<VideoItem.Image> images = new ArrayList<>();
+                        Iterator<String> keys = video.keys();
+                        while (keys.hasNext()) {
+                            String key = keys.next();
+                            if (key.startsWith(TAG_IMAGE_VARIANT)) {
+                                VideoItem.Image image = parseImage(key, video.getString(key));
+                                if (image != null) {
+                                    images.add(image);
+                                }
+                            }
+                        }
                         String title = video.getString(TAG_TITLE);
                         String studio = video.getString(TAG_STUDIO);
                         int duration = video.getInt(TAG_DURATION);
-                        List<MediaTrack> tracks = null;
+                        List<VideoItem.Track> tracks = null;
                         if (video.has(TAG_TRACKS)) {
                             JSONArray tracksArray = video.getJSONArray(TAG_TRACKS);
                             if (tracksArray != null) {
                                 tracks = new ArrayList<>();
                                 for (int k = 0; k < tracksArray.length(); k++) {
                                     JSONObject track = tracksArray.getJSONObject(k);
-                                    tracks.add(buildTrack(track.getLong(TAG_TRACK_ID),
+                                    tracks.add(new VideoItem.Track(track.getLong(TAG_TRACK_ID),
                                             track.getString(TAG_TRACK_TYPE),
                                             track.getString(TAG_TRACK_SUBTYPE),
-                                            urlPrefixMap.get(TAG_TRACKS) + track
-                                                    .getString(TAG_TRACK_CONTENT_ID),
+                                            urlPrefixMap.get(TAG_TRACKS),
+                                            track.getString(TAG_TRACK_CONTENT_ID),
                                             track.getString(TAG_TRACK_NAME),
                                             track.getString(TAG_TRACK_LANGUAGE)
                                     ));
                                 }
                             }
                         }
-                        mediaList.add(buildMediaInfo(title, studio, subTitle, duration, videoUrl,
-                                mimeType, imageUrl, bigImageUrl, tracks));
+                        mediaList.add(new VideoItem(prefixes, title, studio, subTitle, duration,
+                                urlPrefixMap.get(TARGET_FORMAT), videoSuffix, mimeType,
+                                urlPrefixMap.get(TAG_IMAGES), imageSuffix, bigImageSuffix,
+                                images, tracks));
                     }
                 }
             }
@@ -175,7 +354,303 @@ public class VideoProvider {
         return mediaList;
     }
 
-    private static MediaInfo buildMediaInfo(String title, String studio, String subTitle,
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static List<VideoItem> streamMedia(String urlString) throws IOException {
+        final List<VideoItem> list = new ArrayList<>();
+        HttpURLConnection urlConnection = CatalogTransport.openConnection(urlString);
+        InputStream is = CatalogTransport.getBody(urlConnection);
+        try {
+            if (sParallelism > 1) {
+                return new ParallelCatalogParser(sParallelism).parse(is);
+            }
+            streamMedia(is, new OnVideoParsedListener() {
+                @Override
+                public void onVideoParsed(VideoItem video) {
+                    list.add(video);
+                }
+            });
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            urlConnection.disconnect();
+        }
+        return list;
+    }
+
+    /**
+     * Tokenizes the catalog as it is read from {@code is} and hands each video to
+     * {@code listener} as soon as it is complete, so neither the full document nor a json tree is
+     * ever held in memory. Requires API 11 for {@link JsonReader}.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static void streamMedia(InputStream is, OnVideoParsedListener listener)
+            throws IOException {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        JsonReader reader = new JsonReader(new InputStreamReader(is, "UTF-8"));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (TAG_CATEGORIES.equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readCategory(reader, prefixes, listener);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads one category object and hands its videos to {@code listener} in document order. The
+     * prefix table may be shared by categories that are read concurrently.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static void readCategory(JsonReader reader, UrlPrefixTable prefixes,
+            OnVideoParsedListener listener) throws IOException {
+        Map<String, Integer> urlPrefixMap = new HashMap<>();
+        // the prefixes normally precede the videos; any video that shows up before them is kept
+        // in its raw form until the end of the category
+        List<PendingVideo> pending = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case TAG_HLS:
+                case TAG_DASH:
+                case TAG_MP4:
+                case TAG_IMAGES:
+                case TAG_TRACKS:
+                    urlPrefixMap.put(name, prefixes.intern(nextString(reader)));
+                    break;
+                case TAG_VIDEOS:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        PendingVideo video = readVideo(reader);
+                        if (video == null) {
+                            continue;
+                        }
+                        if (urlPrefixMap.containsKey(TARGET_FORMAT)
+                                && urlPrefixMap.containsKey(TAG_IMAGES)
+                                && urlPrefixMap.containsKey(TAG_TRACKS)) {
+                            listener.onVideoParsed(video.build(prefixes, urlPrefixMap));
+                        } else {
+                            if (pending == null) {
+                                pending = new ArrayList<>();
+                            }
+                            pending.add(video);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (pending != null) {
+            for (PendingVideo video : pending) {
+                listener.onVideoParsed(video.build(prefixes, urlPrefixMap));
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static PendingVideo readVideo(JsonReader reader) throws IOException {
+        PendingVideo video = new PendingVideo();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.startsWith(TAG_IMAGE_VARIANT)) {
+                String suffix = nextString(reader);
+                if (TAG_THUMB.equals(name)) {
+                    video.imageSuffix = suffix;
+                } else if (TAG_IMG_780_1200.equals(name)) {
+                    video.bigImageSuffix = suffix;
+                }
+                VideoItem.Image image = parseImage(name, suffix);
+                if (image != null) {
+                    video.images.add(image);
+                }
+                continue;
+            }
+            switch (name) {
+                case TAG_SUBTITLE:
+                    video.subTitle = nextString(reader);
+                    break;
+                case TAG_SOURCES:
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readSource(reader, video);
+                    }
+                    reader.endArray();
+                    break;
+                case TAG_TITLE:
+                    video.title = nextString(reader);
+                    break;
+                case TAG_STUDIO:
+                    video.studio = nextString(reader);
+                    break;
+                case TAG_DURATION:
+                    video.duration = reader.nextInt();
+                    break;
+                case TAG_TRACKS:
+                    video.tracks = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        video.tracks.add(readTrack(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return video.videoSuffix == null ? null : video;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readSource(JsonReader reader, PendingVideo video) throws IOException {
+        String type = null;
+        String url = null;
+        String mime = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case TAG_VIDEO_TYPE:
+                    type = nextString(reader);
+                    break;
+                case TAG_VIDEO_URL:
+                    url = nextString(reader);
+                    break;
+                case TAG_VIDEO_MIME:
+                    mime = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (TARGET_FORMAT.equals(type)) {
+            video.videoSuffix = url;
+            video.mimeType = mime;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static PendingTrack readTrack(JsonReader reader) throws IOException {
+        PendingTrack track = new PendingTrack();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case TAG_TRACK_ID:
+                    track.id = reader.nextLong();
+                    break;
+                case TAG_TRACK_TYPE:
+                    track.type = nextString(reader);
+                    break;
+                case TAG_TRACK_SUBTYPE:
+                    track.subType = nextString(reader);
+                    break;
+                case TAG_TRACK_CONTENT_ID:
+                    track.contentIdSuffix = nextString(reader);
+                    break;
+                case TAG_TRACK_NAME:
+                    track.name = nextString(reader);
+                    break;
+                case TAG_TRACK_LANGUAGE:
+                    track.language = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return track;
+    }
+
+    /**
+     * Returns the variant of the artwork described by a video field such as
+     * {@code image-480x270}, or {@code null} if the name does not hold a valid size.
+     */
+    private static VideoItem.Image parseImage(String name, String suffix) {
+        int separator = name.indexOf('x', TAG_IMAGE_VARIANT.length());
+        if (suffix == null || separator < 0) {
+            return null;
+        }
+        try {
+            int width = Integer.parseInt(name.substring(TAG_IMAGE_VARIANT.length(), separator));
+            int height = Integer.parseInt(name.substring(separator + 1));
+            return width > 0 && height > 0 ? new VideoItem.Image(width, height, suffix) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * The raw fields of a video as read from the stream, before the category url prefixes are
+     * applied.
+     */
+    private static class PendingVideo {
+
+        private String title;
+        private String studio;
+        private String subTitle;
+        private int duration;
+        private String videoSuffix;
+        private String mimeType;
+        private String imageSuffix;
+        private String bigImageSuffix;
+        private final List<VideoItem.Image> images = new ArrayList<>();
+        private List<PendingTrack> tracks;
+
+        private VideoItem build(UrlPrefixTable prefixes, Map<String, Integer> urlPrefixMap) {
+            List<VideoItem.Track> videoTracks = null;
+            if (tracks != null) {
+                videoTracks = new ArrayList<>(tracks.size());
+                for (PendingTrack track : tracks) {
+                    videoTracks.add(new VideoItem.Track(track.id, track.type, track.subType,
+                            prefixId(urlPrefixMap, TAG_TRACKS), track.contentIdSuffix,
+                            track.name, track.language));
+                }
+            }
+            return new VideoItem(prefixes, title, studio, subTitle, duration,
+                    prefixId(urlPrefixMap, TARGET_FORMAT), videoSuffix, mimeType,
+                    prefixId(urlPrefixMap, TAG_IMAGES), imageSuffix, bigImageSuffix, images,
+                    videoTracks);
+        }
+
+        private static int prefixId(Map<String, Integer> urlPrefixMap, String key) {
+            Integer id = urlPrefixMap.get(key);
+            return id == null ? UrlPrefixTable.NO_PREFIX : id;
+        }
+    }
+
+    private static class PendingTrack {
+
+        private long id;
+        private String type;
+        private String subType;
+        private String contentIdSuffix;
+        private String name;
+        private String language;
+    }
+
+    static MediaInfo buildMediaInfo(String title, String studio, String subTitle,
             int duration, String url, String mimeType, String imgUrl, String bigImageUrl,
             List<MediaTrack> tracks) {
         MediaMetadata movieMetadata = new MediaMetadata(MediaMetadata.MEDIA_TYPE_MOVIE);
@@ -189,7 +664,7 @@ public class VideoProvider {
             jsonObj = new JSONObject();
             jsonObj.put(KEY_DESCRIPTION, subTitle);
         } catch (JSONException e) {
-            Log.e(TAG, "Failed to add description to the json object", e);
+            LOGE(TAG, "Failed to add description to the json object", e);
         }
 
         return new MediaInfo.Builder(url)
@@ -202,7 +677,7 @@ public class VideoProvider {
                 .build();
     }
 
-    private static MediaTrack buildTrack(long id, String type, String subType, String contentId,
+    static MediaTrack buildTrack(long id, String type, String subType, String contentId,
             String name, String language) {
         int trackType = MediaTrack.TYPE_UNKNOWN;
         if ("text".equals(type)) {
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import com.google.sample.cast.refplayer.images.ImageLoader;
+import com.google.sample.cast.refplayer.images.ImageVariantSelector;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What the rows of the video list show, kept for each row once it has been bound: the title and
+ * the studio decoded from a mapped snapshot, the url of the variant of the thumbnail that suits
+ * the row and the memory cache key of that thumbnail. Binding a row again, which scrolling back
+ * and forth does all the time, then only reads them back and allocates nothing. A list held in
+ * memory already has its text, so only its thumbnails are kept.
+ * <p>
+ * Rows are kept by position, so the cache must be {@link #reset} whenever the list changes,
+ * other than by appending to it. The thumbnails are resolved again when the network becomes
+ * metered or stops being so, since the preferred variants change with it. Must be used on the
+ * main thread.
+ */
+class VideoRowCache {
+
+    private final ImageVariantSelector mSelector;
+    private final int mImageWidth;
+    private final int mImageHeight;
+    private List<VideoItem> mVideos;
+    private CatalogSnapshot mSnapshot;
+    private String[] mTitles;
+    private String[] mStudios;
+    private String[] mImageUrls;
+    private String[] mImageKeys;
+    private boolean mMetered;
+
+    /**
+     * @param imageWidth the width of the thumbnail of a row, in pixels
+     * @param imageHeight the height of the thumbnail of a row, in pixels
+     */
+    VideoRowCache(ImageVariantSelector selector, int imageWidth, int imageHeight) {
+        mSelector = selector;
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+    }
+
+    /**
+     * Forgets every row, and starts keeping those of {@code videos}.
+     */
+    void reset(List<VideoItem> videos) {
+        mVideos = videos;
+        mSnapshot = videos instanceof CatalogSnapshot ? (CatalogSnapshot) videos : null;
+        mTitles = null;
+        mStudios = null;
+        mImageUrls = null;
+        mImageKeys = null;
+    }
+
+    /**
+     * Forgets every row, and returns how many rows were kept.
+     */
+    int clear() {
+        int count = 0;
+        int size = mVideos == null ? 0 : mVideos.size();
+        for (int i = 0; i < size; i++) {
+            if ((mTitles != null && mTitles[i] != null)
+                    || (mImageKeys != null && i < mImageKeys.length && mImageKeys[i] != null)) {
+                count++;
+            }
+        }
+        reset(mVideos);
+        return count;
+    }
+
+    String getTitle(int position) {
+        if (mSnapshot == null) {
+            return mVideos.get(position).getTitle();
+        }
+        if (mTitles == null) {
+            mTitles = new String[mSnapshot.size()];
+        }
+        if (mTitles[position] == null) {
+            mTitles[position] = mSnapshot.getTitle(position);
+        }
+        return mTitles[position];
+    }
+
+    String getStudio(int position) {
+        if (mSnapshot == null) {
+            return mVideos.get(position).getStudio();
+        }
+        if (mStudios == null) {
+            mStudios = new String[mSnapshot.size()];
+        }
+        if (mStudios[position] == null) {
+            mStudios[position] = mSnapshot.getStudio(position);
+        }
+        return mStudios[position];
+    }
+
+    /**
+     * Returns the url of the thumbnail of the row at {@code position}, or {@code null} if it has
+     * none.
+     */
+    String getImageUrl(int position) {
+        resolveImage(position);
+        return mImageUrls[position];
+    }
+
+    /**
+     * Returns the memory cache key of the thumbnail of the row at {@code position}, as built by
+     * {@link ImageLoader#getCacheKey(String, int, int)}, or {@code null} if it has none.
+     */
+    String getImageKey(int position) {
+        resolveImage(position);
+        return mImageKeys[position];
+    }
+
+    int getImageWidth() {
+        return mImageWidth;
+    }
+
+    int getImageHeight() {
+        return mImageHeight;
+    }
+
+    private void resolveImage(int position) {
+        boolean metered = mSelector.isMetered();
+        if (mImageKeys == null || metered != mMetered) {
+            mImageUrls = new String[mVideos.size()];
+            mImageKeys = new String[mVideos.size()];
+            mMetered = metered;
+        } else if (position >= mImageKeys.length) {
+            // the list of the rows parsed so far grows as pages are added to it
+            mImageUrls = Arrays.copyOf(mImageUrls, mVideos.size());
+            mImageKeys = Arrays.copyOf(mImageKeys, mVideos.size());
+        }
+        if (mImageKeys[position] != null) {
+            return;
+        }
+        String url = mSnapshot != null
+                ? mSnapshot.getImageUrl(position, mSelector, mImageWidth, mImageHeight)
+                : mVideos.get(position).getImageUrl(mSelector, mImageWidth, mImageHeight);
+        mImageUrls[position] = url;
+        mImageKeys[position] = url == null ? null
+                : ImageLoader.getCacheKey(url, mImageWidth, mImageHeight);
+    }
+}
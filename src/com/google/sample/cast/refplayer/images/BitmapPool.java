@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.images;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of bitmaps that are no longer displayed nor cached, so that their memory can be reused
+ * by the decoder through {@link android.graphics.BitmapFactory.Options#inBitmap} instead of being
+ * allocated again. Bitmaps are bucketed by allocation size; from KitKat on, any bitmap that is
+ * large enough (but not wastefully so) can be reconfigured to the requested size, before that
+ * only a bitmap of the exact same dimensions and configuration can be reused. The pool is bounded
+ * in bytes and drops the bitmaps that were added first when it is full.
+ */
+public class BitmapPool {
+
+    // do not hand out a bitmap more than this many times larger than what is needed
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private final TreeMap<Integer, List<Bitmap>> mBuckets = new TreeMap<>();
+    // every pooled bitmap, in the order it was added
+    private final LinkedHashSet<Bitmap> mBitmaps = new LinkedHashSet<>();
+    private long mMaxBytes;
+    private long mSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns {@code true} if the decoder of this platform can decode into a pooled bitmap.
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * Adds a bitmap to the pool. The caller must not use it afterwards.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (!isSupported() || bitmap.isRecycled() || !bitmap.isMutable()
+                || mBitmaps.contains(bitmap)) {
+            return;
+        }
+        int size = getByteCount(bitmap);
+        if (size > mMaxBytes) {
+            return;
+        }
+        List<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mBitmaps.add(bitmap);
+        mSize += size;
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Returns a pooled bitmap that can hold an image of the given size and configuration, or
+     * {@code null} if there is none. On KitKat and later the bitmap has already been reconfigured
+     * to that size; its content is undefined.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int needed = width * height * getBytesPerPixel(config);
+        Bitmap bitmap = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Map.Entry<Integer, List<Bitmap>> entry = mBuckets.ceilingEntry(needed);
+            if (entry != null && entry.getKey() <= needed * MAX_SIZE_MULTIPLE) {
+                bitmap = entry.getValue().get(entry.getValue().size() - 1);
+            }
+        } else {
+            List<Bitmap> bucket = mBuckets.get(needed);
+            if (bucket != null) {
+                for (Bitmap candidate : bucket) {
+                    if (candidate.getWidth() == width && candidate.getHeight() == height
+                            && candidate.getConfig() == config) {
+                        bitmap = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+        if (bitmap == null) {
+            mMissCount++;
+            return null;
+        }
+        remove(bitmap);
+        mHitCount++;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reconfigure(bitmap, width, height, config);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Drops the bitmaps that were pooled first until the pool holds at most {@code maxBytes}.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Bitmap> iterator = mBitmaps.iterator();
+        while (mSize > maxBytes && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            removeFromBucket(bitmap);
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public synchronized long maxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Returns the number of bytes of memory held by {@code bitmap}, which can be more than its
+     * current dimensions need if it has been reconfigured.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static int getByteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private void remove(Bitmap bitmap) {
+        mBitmaps.remove(bitmap);
+        removeFromBucket(bitmap);
+    }
+
+    private void removeFromBucket(Bitmap bitmap) {
+        int size = getByteCount(bitmap);
+        List<Bitmap> bucket = mBuckets.get(size);
+        if (bucket != null && bucket.remove(bitmap) && bucket.isEmpty()) {
+            mBuckets.remove(size);
+        }
+        mSize -= size;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        bitmap.reconfigure(width, height, config);
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.images;
+
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A cache of downloaded image files, capped at a total size in bytes. Images are appended to a few
+ * large segment files that are memory-mapped, instead of being stored one file each, and are
+ * looked up through an open-addressing table keyed by a 64-bit hash of their url. The table is
+ * rebuilt on first use by walking the record headers of the segments, so opening the cache costs a
+ * handful of file operations however many images it holds.
+ * <p>
+ * Segment layout: a sequence of records, each made of a magic number, the url hash, the length of
+ * the data and the data itself. A record is complete once its magic number is written, which is
+ * done last; the first position without one is the end of the segment.
+ * <p>
+ * When the last segment is full a new one is started, and when there are too many segments the
+ * oldest one is deleted with its images. An image that is read from the oldest segment is copied
+ * to the newest one first, so that the images in use survive. Copied and replaced images leave
+ * dead space behind; a segment whose dead space passes a threshold is compacted on a background
+ * thread by copying its live images forward and deleting it.
+ */
+public class DiskImageCache {
+
+    private static final String TAG = "DiskImageCache";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int MIN_SEGMENT_COUNT = 2;
+    private static final int MAGIC = 0x494d4731; // "IMG1"
+    private static final int HEADER_SIZE = 4 + 8 + 4;
+    private static final int RECORD_HASH = 4;
+    private static final int RECORD_LENGTH = 12;
+    private static final float COMPACTION_THRESHOLD = 0.5f;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final File mDir;
+    private final long mMaxBytes;
+    private final int mMaxSegments;
+    private final ExecutorService mCompactor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG + "-compactor");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+    // everything below is guarded by this
+    private final TreeMap<Integer, Segment> mSegments = new TreeMap<>();
+    private final Index mIndex = new Index();
+    private boolean mOpened;
+    private int mNextSegmentId;
+    private long mSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+    private int mCompactionCount;
+
+    public DiskImageCache(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+        mMaxSegments = (int) Math.max(MIN_SEGMENT_COUNT, maxBytes / SEGMENT_SIZE);
+    }
+
+    /**
+     * Returns the cached image for {@code url} as a read-only buffer, or {@code null} if there is
+     * none. The buffer stays valid even if the image is later evicted.
+     */
+    public synchronized ByteBuffer get(String url) {
+        open();
+        long hash = hash(url);
+        int slot = mIndex.find(hash);
+        if (slot < 0) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        Segment segment = mSegments.get(mIndex.mSegments[slot]);
+        int offset = mIndex.mOffsets[slot];
+        int length = mIndex.mLengths[slot];
+        if (isNextToEvict(segment)) {
+            // keep it since it is still in use
+            try {
+                return append(hash, segment.mBuffer, offset + HEADER_SIZE, length);
+            } catch (IOException e) {
+                LOGW(TAG, "Failed to move an image forward", e);
+            }
+        }
+        return slice(segment.mBuffer, offset + HEADER_SIZE, length);
+    }
+
+    /**
+     * Stores the content of {@code in} as the image for {@code url} and returns it as a read-only
+     * buffer. The stream is read to the end but not closed.
+     */
+    public ByteBuffer put(String url, InputStream in) throws IOException {
+        long hash = hash(url);
+        byte[] data = new byte[BUFFER_SIZE];
+        int length = 0;
+        int read;
+        while ((read = in.read(data, length, data.length - length)) != -1) {
+            length += read;
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+        if (HEADER_SIZE + length > SEGMENT_SIZE) {
+            LOGW(TAG, "Image of " + length + " bytes is too large to be cached");
+            return ByteBuffer.wrap(data, 0, length).asReadOnlyBuffer();
+        }
+        synchronized (this) {
+            open();
+            return append(hash, ByteBuffer.wrap(data), 0, length);
+        }
+    }
+
+    /**
+     * Deletes the oldest segments until the cache holds at most {@code maxBytes}.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        open();
+        while (mSize > maxBytes && !mSegments.isEmpty()) {
+            evict(mSegments.firstEntry().getValue());
+        }
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Returns the number of segments that have been compacted.
+     */
+    public synchronized int compactionCount() {
+        return mCompactionCount;
+    }
+
+    /**
+     * Returns an input stream over {@code buffer}, from its position to its limit.
+     */
+    public static InputStream newInputStream(final ByteBuffer buffer) {
+        return new InputStream() {
+            private final ByteBuffer mBuffer = buffer.duplicate();
+
+            @Override
+            public int read() {
+                return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int offset, int count) {
+                if (count == 0) {
+                    return 0;
+                }
+                if (!mBuffer.hasRemaining()) {
+                    return -1;
+                }
+                count = Math.min(count, mBuffer.remaining());
+                mBuffer.get(b, offset, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return mBuffer.remaining();
+            }
+        };
+    }
+
+    /**
+     * Maps the existing segments and rebuilds the index from them, on first use.
+     */
+    private void open() {
+        if (mOpened) {
+            return;
+        }
+        mOpened = true;
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            LOGW(TAG, "Failed to create the image cache directory " + mDir);
+        }
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            int id = getSegmentId(file.getName());
+            if (id < 0) {
+                // a leftover of another cache layout
+                file.delete();
+                continue;
+            }
+            try {
+                mSegments.put(id, new Segment(id, file));
+            } catch (IOException e) {
+                LOGW(TAG, "Failed to map " + file + ", dropping it", e);
+                file.delete();
+            }
+        }
+        for (Segment segment : mSegments.values()) {
+            ByteBuffer buffer = segment.mBuffer;
+            int position = 0;
+            while (position + HEADER_SIZE <= SEGMENT_SIZE && buffer.getInt(position) == MAGIC) {
+                int length = buffer.getInt(position + RECORD_LENGTH);
+                if (length < 0 || position + HEADER_SIZE + length > SEGMENT_SIZE) {
+                    break;
+                }
+                index(buffer.getLong(position + RECORD_HASH), segment, position, length);
+                position += HEADER_SIZE + length;
+            }
+            segment.mEnd = position;
+            mSize += position;
+            mNextSegmentId = segment.mId + 1;
+        }
+        trimToSize(mMaxBytes);
+        for (Segment segment : mSegments.values()) {
+            scheduleCompactionIfNeeded(segment);
+        }
+    }
+
+    /**
+     * Appends a record holding {@code length} bytes of {@code source} from {@code offset} to the
+     * last segment, starting a new one if needed, and returns the data as a read-only buffer.
+     */
+    private ByteBuffer append(long hash, ByteBuffer source, int offset, int length)
+            throws IOException {
+        int recordSize = HEADER_SIZE + length;
+        Segment segment = mSegments.isEmpty() ? null : mSegments.lastEntry().getValue();
+        if (segment == null || segment.mEnd + recordSize > SEGMENT_SIZE) {
+            segment = new Segment(mNextSegmentId++,
+                    new File(mDir, String.format(Locale.US, "%s%08d", SEGMENT_PREFIX,
+                            mNextSegmentId - 1)));
+            mSegments.put(segment.mId, segment);
+            while (mSegments.size() > mMaxSegments) {
+                evict(mSegments.firstEntry().getValue());
+            }
+        }
+        int position = segment.mEnd;
+        ByteBuffer buffer = segment.mBuffer;
+        ByteBuffer data = source.duplicate();
+        data.limit(offset + length);
+        data.position(offset);
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + HEADER_SIZE);
+        target.put(data);
+        buffer.putLong(position + RECORD_HASH, hash);
+        buffer.putInt(position + RECORD_LENGTH, length);
+        // the record only counts once its magic number is there
+        buffer.putInt(position, MAGIC);
+        segment.mEnd = position + recordSize;
+        if (segment.mEnd + 4 <= SEGMENT_SIZE) {
+            // a record that was interrupted before must not be mistaken for a complete one
+            buffer.putInt(segment.mEnd, 0);
+        }
+        mSize += recordSize;
+        index(hash, segment, position, length);
+        return slice(buffer, position + HEADER_SIZE, length);
+    }
+
+    /**
+     * Points the index at a record, and accounts for the record it replaces as dead space.
+     */
+    private void index(long hash, Segment segment, int position, int length) {
+        int slot = mIndex.find(hash);
+        if (slot >= 0) {
+            Segment previous = mSegments.get(mIndex.mSegments[slot]);
+            if (previous != null) {
+                previous.mLive -= HEADER_SIZE + mIndex.mLengths[slot];
+                scheduleCompactionIfNeeded(previous);
+            }
+        }
+        mIndex.put(hash, segment.mId, position, length);
+        segment.mLive += HEADER_SIZE + length;
+    }
+
+    private void evict(Segment segment) {
+        ByteBuffer buffer = segment.mBuffer;
+        int position = 0;
+        while (position < segment.mEnd) {
+            long hash = buffer.getLong(position + RECORD_HASH);
+            int length = buffer.getInt(position + RECORD_LENGTH);
+            int slot = mIndex.find(hash);
+            if (slot >= 0 && mIndex.mSegments[slot] == segment.mId
+                    && mIndex.mOffsets[slot] == position) {
+                mIndex.remove(slot);
+                mEvictionCount++;
+            }
+            position += HEADER_SIZE + length;
+        }
+        mSegments.remove(segment.mId);
+        mSize -= segment.mEnd;
+        // buffers that were handed out stay valid: the mapping outlives the file
+        if (!segment.mFile.delete()) {
+            LOGW(TAG, "Failed to delete " + segment.mFile);
+        }
+    }
+
+    private void scheduleCompactionIfNeeded(final Segment segment) {
+        if (segment.mCompacting || segment == mSegments.lastEntry().getValue()
+                || isNextToEvict(segment)
+                || segment.mEnd - segment.mLive <= segment.mEnd * COMPACTION_THRESHOLD) {
+            return;
+        }
+        segment.mCompacting = true;
+        mCompactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compact(segment);
+            }
+        });
+    }
+
+    /**
+     * Returns {@code true} if {@code segment} goes next time a segment is started. Its images that
+     * are still read are moved forward one by one, the others should go with it rather than be
+     * kept alive by a compaction.
+     */
+    private boolean isNextToEvict(Segment segment) {
+        return segment == mSegments.firstEntry().getValue() && mSegments.size() >= mMaxSegments;
+    }
+
+    /**
+     * Copies the live images of {@code segment} to the last segment and deletes it. The lock is
+     * only held for one image at a time, so lookups go on while a segment is compacted.
+     */
+    private void compact(Segment segment) {
+        ByteBuffer buffer = segment.mBuffer;
+        int position = 0;
+        while (true) {
+            synchronized (this) {
+                if (mSegments.get(segment.mId) != segment) {
+                    // evicted in the meantime
+                    return;
+                }
+                if (isNextToEvict(segment)) {
+                    segment.mCompacting = false;
+                    return;
+                }
+                if (position >= segment.mEnd) {
+                    evict(segment);
+                    mCompactionCount++;
+                    return;
+                }
+                long hash = buffer.getLong(position + RECORD_HASH);
+                int length = buffer.getInt(position + RECORD_LENGTH);
+                int slot = mIndex.find(hash);
+                if (slot >= 0 && mIndex.mSegments[slot] == segment.mId
+                        && mIndex.mOffsets[slot] == position) {
+                    try {
+                        append(hash, buffer, position + HEADER_SIZE, length);
+                    } catch (IOException e) {
+                        LOGW(TAG, "Failed to compact " + segment.mFile, e);
+                        segment.mCompacting = false;
+                        return;
+                    }
+                }
+                position += HEADER_SIZE + length;
+            }
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    private static int getSegmentId(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the first 64 bits of the SHA-1 of {@code url}, never 0 since the index uses 0 for
+     * empty slots.
+     */
+    private static long hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash == 0 ? 1 : hash;
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A segment file, mapped in full.
+     */
+    private static class Segment {
+
+        private final int mId;
+        private final File mFile;
+        private final MappedByteBuffer mBuffer;
+        // the end of the last complete record
+        private int mEnd;
+        // the bytes of the records that the index points to
+        private int mLive;
+        private boolean mCompacting;
+
+        Segment(int id, File file) throws IOException {
+            mId = id;
+            mFile = file;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (raf.length() < SEGMENT_SIZE) {
+                    // the file is sparse, so this does not take any room yet
+                    raf.setLength(SEGMENT_SIZE);
+                }
+                mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            } finally {
+                // the mapping stays valid after the file is closed
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * An open-addressing hash table with linear probing, from url hash to the segment, offset and
+     * length of the record. Hashes are uniformly distributed already, so their low bits are used
+     * as is.
+     */
+    private static class Index {
+
+        private static final int INITIAL_CAPACITY = 256;
+        private static final float MAX_LOAD = 0.7f;
+
+        private long[] mKeys = new long[INITIAL_CAPACITY];
+        private int[] mSegments = new int[INITIAL_CAPACITY];
+        private int[] mOffsets = new int[INITIAL_CAPACITY];
+        private int[] mLengths = new int[INITIAL_CAPACITY];
+        private int mCount;
+
+        /**
+         * Returns the slot that holds {@code hash}, or -1.
+         */
+        int find(long hash) {
+            int mask = mKeys.length - 1;
+            for (int slot = (int) hash & mask; mKeys[slot] != 0; slot = (slot + 1) & mask) {
+                if (mKeys[slot] == hash) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        void put(long hash, int segment, int offset, int length) {
+            if (mCount + 1 > mKeys.length * MAX_LOAD) {
+                resize(mKeys.length * 2);
+            }
+            int mask = mKeys.length - 1;
+            int slot = (int) hash & mask;
+            while (mKeys[slot] != 0 && mKeys[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            if (mKeys[slot] == 0) {
+                mCount++;
+            }
+            mKeys[slot] = hash;
+            mSegments[slot] = segment;
+            mOffsets[slot] = offset;
+            mLengths[slot] = length;
+        }
+
+        /**
+         * Empties {@code slot}, moving back the entries after it that would no longer be found.
+         */
+        void remove(int slot) {
+            int mask = mKeys.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (mKeys[next] != 0) {
+                int home = (int) mKeys[next] & mask;
+                // the entry may fill the hole if its home is not in (hole, next]
+                boolean movable = hole <= next ? home <= hole || home > next
+                        : home <= hole && home > next;
+                if (movable) {
+                    mKeys[hole] = mKeys[next];
+                    mSegments[hole] = mSegments[next];
+                    mOffsets[hole] = mOffsets[next];
+                    mLengths[hole] = mLengths[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            mKeys[hole] = 0;
+            mCount--;
+        }
+
+        private void resize(int capacity) {
+            long[] keys = mKeys;
+            int[] segments = mSegments;
+            int[] offsets = mOffsets;
+            int[] lengths = mLengths;
+            mKeys = new long[capacity];
+            mSegments = new int[capacity];
+            mOffsets = new int[capacity];
+            mLengths = new int[capacity];
+            mCount = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    put(keys[i], segments[i], offsets[i], lengths[i]);
+                }
+            }
+        }
+    }
+}
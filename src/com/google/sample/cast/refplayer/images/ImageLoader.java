@@ -0,0 +1,813 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.images;
+
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGW;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The image pipeline of the application. Images are looked up in a memory cache of decoded
+ * bitmaps, bounded by their size in bytes, then in a {@link DiskImageCache} of downloaded files,
+ * and are only fetched from the network when neither has them. Fetching and decoding happen on a
+ * small pool of background threads; the result is set on the {@link ImageView} unless the view
+ * has been asked to show another image in the meantime.
+ * <p>
+ * Images are decoded at the size they are requested at rather than at full resolution: the file
+ * is subsampled while it is decoded and then scaled to fit the requested box, keeping its aspect
+ * ratio. The memory cache holds these downsampled bitmaps, keyed by url and requested size.
+ * <p>
+ * Bitmaps are reference counted: the memory cache, every view that shows a bitmap and every
+ * decoded bitmap on its way to a view hold a reference. A bitmap that is no longer referenced
+ * goes to a {@link BitmapPool}, which the decoder draws from before it allocates a new bitmap.
+ * Adapters should therefore hand the views of their recycled holders back with
+ * {@link #recycle(ImageView)}.
+ * <p>
+ * Images that are about to be needed can be {@link #prefetch prefetched} into the memory cache.
+ * Prefetches run on a thread of their own so that they never delay the images that are already
+ * on screen, and can be cancelled for as long as they have not started.
+ * <p>
+ * Requests for an image that is already being fetched at the same size are coalesced: whoever
+ * asks for it, a single fetch and decode feeds every view that waits for it, and a prefetch that
+ * a view starts waiting for is moved ahead of the other prefetches.
+ * <p>
+ * Every request is timed: how long it waited for a thread, how long the connection took to open
+ * (name resolution included), how long the download, the decode and the scaling took, and how
+ * long the whole request took until the image was shown. Each phase goes to a
+ * {@link LatencyHistogram}; {@link #dump(PrintWriter)} writes them out along with the counters.
+ * <p>
+ * All the methods but {@link #getStats()} and {@link #dump(PrintWriter)} must be called on the
+ * main thread.
+ */
+public class ImageLoader {
+
+    private static final String TAG = "ImageLoader";
+    private static final String CACHE_DIR = "images";
+    private static final long DISK_CACHE_SIZE = 20 * 1024 * 1024;
+    private static final int MEMORY_CACHE_FRACTION = 8;
+    private static final int POOL_FRACTION = 16;
+    private static final int THREAD_COUNT = 3;
+    private static final int CONNECT_TIMEOUT_MS = 15 * 1000;
+    private static final int READ_TIMEOUT_MS = 20 * 1000;
+
+    private static ImageLoader sInstance;
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final DiskImageCache mDiskCache;
+    private final BitmapPool mPool;
+    private final Paint mScalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // guarded by itself; weak so that the bitmap of a view that is dropped without being
+    // recycled is simply collected (Bitmap does not override equals)
+    private final Map<Bitmap, Integer> mRefCounts = new WeakHashMap<>();
+    // the bitmap that each view currently shows, main thread only
+    private final Map<ImageView, Bitmap> mShown = new WeakHashMap<>();
+    private final ExecutorService mExecutor;
+    private final ExecutorService mPrefetchExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // the cache key of the image that each view is currently waiting for
+    private final Map<ImageView, String> mTargets = new WeakHashMap<>();
+    private final AtomicInteger mNetworkFetchCount = new AtomicInteger();
+    private final AtomicInteger mFailureCount = new AtomicInteger();
+    // the requests that are queued or running, by cache key, main thread only
+    private final Map<String, Request> mInFlight = new HashMap<>();
+    private final AtomicInteger mCoalescedCount = new AtomicInteger();
+    // the keys of the prefetched images that have not been shown yet, guarded by itself
+    private final Set<String> mPrefetched = new HashSet<>();
+    private final AtomicInteger mPrefetchCount = new AtomicInteger();
+    private final AtomicInteger mPrefetchHitCount = new AtomicInteger();
+    private final AtomicInteger mPrefetchCancelCount = new AtomicInteger();
+    private final AtomicInteger mPrefetchWasteCount = new AtomicInteger();
+    private final LatencyHistogram mQueueTimes = new LatencyHistogram("queue");
+    private final LatencyHistogram mConnectTimes = new LatencyHistogram("connect");
+    private final LatencyHistogram mDownloadTimes = new LatencyHistogram("download");
+    private final LatencyHistogram mDecodeTimes = new LatencyHistogram("decode");
+    private final LatencyHistogram mTransformTimes = new LatencyHistogram("transform");
+    private final LatencyHistogram mTotalTimes = new LatencyHistogram("total");
+
+    private ImageLoader(Context context) {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        mPool = new BitmapPool(maxMemory / POOL_FRACTION);
+        mMemoryCache = new LruCache<String, Bitmap>((int) (maxMemory / MEMORY_CACHE_FRACTION)) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return BitmapPool.getByteCount(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
+                    Bitmap newValue) {
+                release(oldValue);
+                synchronized (mPrefetched) {
+                    if (mPrefetched.remove(key)) {
+                        mPrefetchWasteCount.incrementAndGet();
+                    }
+                }
+            }
+        };
+        mDiskCache = new DiskImageCache(new File(context.getCacheDir(), CACHE_DIR),
+                DISK_CACHE_SIZE);
+        // images that are shown load at the usual background priority, so that they keep up
+        // with scrolling; prefetching only runs when nothing else wants the cpu
+        mExecutor = Executors.newFixedThreadPool(THREAD_COUNT,
+                newThreadFactory(TAG, Process.THREAD_PRIORITY_BACKGROUND));
+        mPrefetchExecutor = Executors.newSingleThreadExecutor(
+                newThreadFactory(TAG + "-prefetch", Process.THREAD_PRIORITY_LOWEST));
+    }
+
+    /**
+     * Returns a factory of threads that run at {@code priority}, one of the
+     * {@code THREAD_PRIORITY_*} constants of {@link Process}.
+     */
+    private static ThreadFactory newThreadFactory(final String name, final int priority) {
+        return new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // the tid is only known once the thread runs, so it sets its own priority
+                        Process.setThreadPriority(priority);
+                        runnable.run();
+                    }
+                }, name + "-" + mCount.incrementAndGet());
+            }
+        };
+    }
+
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the loader if it has been created, without creating it, or {@code null}.
+     */
+    public static synchronized ImageLoader peekInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Shows the image at {@code url} in {@code view}, decoded to fit in {@code width} by
+     * {@code height} pixels; a dimension of 0 leaves that side unconstrained. The placeholder is
+     * shown until the image is available, and instead of it if it cannot be loaded or if
+     * {@code url} is {@code null}.
+     */
+    public void load(String url, ImageView view, int width, int height, int placeholderResId) {
+        load(url, view, width, height, null, 0, 0, placeholderResId);
+    }
+
+    /**
+     * Like {@link #load(String, ImageView, int, int, int)}, but until the image is available shows
+     * the one at {@code previewUrl}, at {@code previewWidth} by {@code previewHeight}, if that one
+     * is already in the memory cache. The preview is never fetched, so it is either shown right
+     * away or not at all.
+     */
+    public void load(String url, ImageView view, int width, int height, String previewUrl,
+            int previewWidth, int previewHeight, int placeholderResId) {
+        load(url, url == null ? null : getCacheKey(url, width, height), view, width, height,
+                previewUrl, previewWidth, previewHeight, placeholderResId);
+    }
+
+    /**
+     * Like {@link #load(String, ImageView, int, int, int)}, with the memory cache key of the image
+     * already built by {@link #getCacheKey(String, int, int)}, so that a list that binds the same
+     * rows over and over only builds it once per row. Loading the image that the view already
+     * shows does not touch the view.
+     */
+    public void load(String url, String key, ImageView view, int width, int height,
+            int placeholderResId) {
+        load(url, key, view, width, height, null, 0, 0, placeholderResId);
+    }
+
+    private void load(String url, String key, ImageView view, int width, int height,
+            String previewUrl, int previewWidth, int previewHeight, int placeholderResId) {
+        if (url == null) {
+            mTargets.remove(view);
+            show(view, null, placeholderResId);
+            return;
+        }
+        Bitmap bitmap = getCached(key);
+        if (bitmap != null) {
+            synchronized (mPrefetched) {
+                if (mPrefetched.remove(key)) {
+                    mPrefetchHitCount.incrementAndGet();
+                }
+            }
+            mTargets.remove(view);
+            if (mShown.get(view) == bitmap) {
+                // only the reference that was just taken has to go
+                release(bitmap);
+                return;
+            }
+            show(view, bitmap, 0);
+            return;
+        }
+        if (key.equals(mTargets.get(view))) {
+            // already on its way
+            return;
+        }
+        mTargets.put(view, key);
+        Bitmap preview = previewUrl == null ? null
+                : getCached(getCacheKey(previewUrl, previewWidth, previewHeight));
+        show(view, preview, placeholderResId);
+        Request request = mInFlight.get(key);
+        if (request == null) {
+            request = new Request(url, key, width, height, false);
+            mInFlight.put(key, request);
+            mExecutor.execute(request);
+        } else {
+            mCoalescedCount.incrementAndGet();
+            if (request.mPrefetch && !request.mClaimed) {
+                request.mClaimed = true;
+                // the time it spent queued as a prefetch is not a delay anyone saw
+                request.mQueuedAt = System.nanoTime();
+                mPrefetchHitCount.incrementAndGet();
+                // whichever executor gets to it first runs it, the other one skips it
+                mExecutor.execute(request);
+            }
+        }
+        request.mWaiters.add(new WeakReference<>(view));
+    }
+
+    /**
+     * Loads the image at {@code url} into the memory cache, decoded to fit in {@code width} by
+     * {@code height} pixels, so that a later {@link #load} with the same arguments finds it there.
+     * Does nothing if the image is already cached or queued.
+     */
+    public void prefetch(String url, int width, int height) {
+        if (url == null) {
+            return;
+        }
+        String key = getCacheKey(url, width, height);
+        if (mInFlight.containsKey(key)) {
+            return;
+        }
+        Request request = new Request(url, key, width, height, true);
+        mInFlight.put(key, request);
+        mPrefetchCount.incrementAndGet();
+        mPrefetchExecutor.execute(request);
+    }
+
+    /**
+     * Cancels a {@link #prefetch} that has not started yet and that no view waits for. Returns
+     * {@code true} if there was one.
+     */
+    public boolean cancelPrefetch(String url, int width, int height) {
+        if (url == null) {
+            return false;
+        }
+        String key = getCacheKey(url, width, height);
+        Request request = mInFlight.get(key);
+        if (request == null || !request.cancelPrefetch()) {
+            return false;
+        }
+        mInFlight.remove(key);
+        mPrefetchCancelCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stops delivering any pending image to {@code view}, for instance when it is recycled. Other
+     * views waiting for the same image still get it.
+     */
+    public void cancel(ImageView view) {
+        mTargets.remove(view);
+    }
+
+    /**
+     * Cancels any pending image for {@code view}, clears it and gives its bitmap back to the pool
+     * unless it is still cached or shown elsewhere. To be called when a list recycles the view.
+     */
+    public void recycle(ImageView view) {
+        mTargets.remove(view);
+        view.setImageDrawable(null);
+        Bitmap previous = mShown.remove(view);
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    /**
+     * Shows {@code bitmap}, whose reference is handed over to the view, or the placeholder if it
+     * is {@code null}, and releases the bitmap the view showed before.
+     */
+    private void show(ImageView view, Bitmap bitmap, int placeholderResId) {
+        Bitmap previous;
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            previous = mShown.put(view, bitmap);
+        } else {
+            view.setImageResource(placeholderResId);
+            previous = mShown.remove(view);
+        }
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    /**
+     * Returns the cached bitmap for {@code key} with a reference taken on it, or {@code null}.
+     */
+    private Bitmap getCached(String key) {
+        synchronized (mRefCounts) {
+            // taking the reference under the lock keeps an eviction from pooling the bitmap
+            // before the caller holds it
+            Bitmap bitmap = mMemoryCache.get(key);
+            if (bitmap != null) {
+                acquire(bitmap);
+            }
+            return bitmap;
+        }
+    }
+
+    private void acquire(Bitmap bitmap) {
+        synchronized (mRefCounts) {
+            Integer count = mRefCounts.get(bitmap);
+            mRefCounts.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    private void release(Bitmap bitmap) {
+        synchronized (mRefCounts) {
+            Integer count = mRefCounts.get(bitmap);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                mRefCounts.put(bitmap, count - 1);
+                return;
+            }
+            mRefCounts.remove(bitmap);
+        }
+        mPool.put(bitmap);
+    }
+
+    /**
+     * Releases memory: the memory cache is trimmed to {@code fraction} of its maximum size, and
+     * the pool, which the evicted bitmaps go to, is emptied. Bitmaps that views still show stay
+     * alive until they are recycled. Returns the number of bytes the cache and the pool let go
+     * of.
+     */
+    public long trimMemory(float fraction) {
+        long before = mMemoryCache.size() + mPool.size();
+        mMemoryCache.trimToSize((int) (mMemoryCache.maxSize() * fraction));
+        mPool.trimToSize(0);
+        return Math.max(0, before - mMemoryCache.size() - mPool.size());
+    }
+
+    /**
+     * Returns the pool that decoded bitmaps go back to once nothing references them anymore.
+     */
+    BitmapPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * Returns a snapshot of the counters of the pipeline.
+     */
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    /**
+     * Writes a report of the counters and of the timings of the pipeline, for debugging.
+     */
+    public void dump(PrintWriter writer) {
+        getStats().dump(writer);
+    }
+
+    /**
+     * Returns the key of the memory cache entry of the image at {@code url} decoded to fit in
+     * {@code width} by {@code height} pixels.
+     */
+    public static String getCacheKey(String url, int width, int height) {
+        return url + '@' + width + 'x' + height;
+    }
+
+    private Bitmap fetch(String url, int width, int height) throws IOException {
+        ByteBuffer data = mDiskCache.get(url);
+        if (data == null) {
+            mNetworkFetchCount.incrementAndGet();
+            long start = System.nanoTime();
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            try {
+                // HttpURLConnection resolves the host as part of connecting, so the two cannot
+                // be told apart
+                connection.connect();
+                long connected = System.nanoTime();
+                mConnectTimes.record(connected - start);
+                InputStream in = connection.getInputStream();
+                try {
+                    data = mDiskCache.put(url, in);
+                } finally {
+                    in.close();
+                }
+                mDownloadTimes.record(System.nanoTime() - connected);
+            } finally {
+                connection.disconnect();
+            }
+        }
+        Bitmap bitmap = decode(data, width, height);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode " + url);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes {@code data} so that it fits in {@code width} by {@code height}. The largest power
+     * of two subsampling that keeps the image at least as large as the box is applied by the
+     * decoder, and the result is then scaled down to the exact size. Both steps reuse pooled
+     * bitmaps when they can.
+     */
+    Bitmap decode(ByteBuffer data, int width, int height) {
+        long start = System.nanoTime();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(DiskImageCache.newInputStream(data), null, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        float scale = getScale(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outWidth * scale * options.inSampleSize * 2 <= options.outWidth
+                && options.outHeight * scale * options.inSampleSize * 2 <= options.outHeight) {
+            options.inSampleSize *= 2;
+        }
+        int targetWidth = Math.max(1, Math.round(options.outWidth * scale));
+        int targetHeight = Math.max(1, Math.round(options.outHeight * scale));
+        Bitmap bitmap = BitmapPool.isSupported() ? decodeIntoPooled(data, options)
+                : BitmapFactory.decodeStream(DiskImageCache.newInputStream(data), null, options);
+        long decoded = System.nanoTime();
+        mDecodeTimes.record(decoded - start);
+        if (bitmap == null
+                || (bitmap.getWidth() == targetWidth && bitmap.getHeight() == targetHeight)) {
+            return bitmap;
+        }
+        Bitmap scaled = mPool.get(targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
+        if (scaled == null) {
+            scaled = Bitmap.createBitmap(targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
+        } else {
+            scaled.eraseColor(Color.TRANSPARENT);
+        }
+        new Canvas(scaled).drawBitmap(bitmap, null, new Rect(0, 0, targetWidth, targetHeight),
+                mScalePaint);
+        // the intermediate bitmap was never shared
+        mPool.put(bitmap);
+        mTransformTimes.record(System.nanoTime() - decoded);
+        return scaled;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Bitmap decodeIntoPooled(ByteBuffer data, BitmapFactory.Options options) {
+        options.inMutable = true;
+        // before KitKat, only jpeg and png images of the exact same size can be decoded into an
+        // existing bitmap
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || (options.inSampleSize == 1
+                && ("image/jpeg".equals(options.outMimeType)
+                || "image/png".equals(options.outMimeType)))) {
+            int sampledWidth = (options.outWidth + options.inSampleSize - 1)
+                    / options.inSampleSize;
+            int sampledHeight = (options.outHeight + options.inSampleSize - 1)
+                    / options.inSampleSize;
+            options.inBitmap = mPool.get(sampledWidth, sampledHeight, Bitmap.Config.ARGB_8888);
+        }
+        try {
+            return BitmapFactory.decodeStream(DiskImageCache.newInputStream(data), null, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            // the pooled bitmap could not be reused after all; drop it
+            options.inBitmap = null;
+            return BitmapFactory.decodeStream(DiskImageCache.newInputStream(data), null, options);
+        }
+    }
+
+    /**
+     * Returns the factor that makes an image of the given size fit in the box, never more than 1.
+     */
+    private static float getScale(int imageWidth, int imageHeight, int width, int height) {
+        float scale = 1f;
+        if (width > 0) {
+            scale = Math.min(scale, (float) width / imageWidth);
+        }
+        if (height > 0) {
+            scale = Math.min(scale, (float) height / imageHeight);
+        }
+        return scale;
+    }
+
+    /**
+     * The fetch and decode of one image at one size, shared by every view that waits for it.
+     */
+    private class Request implements Runnable {
+
+        private static final int STATE_QUEUED = 0;
+        private static final int STATE_RUNNING = 1;
+        private static final int STATE_CANCELLED = 2;
+
+        private final String mUrl;
+        private final String mKey;
+        private final int mWidth;
+        private final int mHeight;
+        // whether this was started by a prefetch
+        private final boolean mPrefetch;
+        private final AtomicInteger mState = new AtomicInteger(STATE_QUEUED);
+        // main thread only
+        private final List<WeakReference<ImageView>> mWaiters = new ArrayList<>();
+        // whether a view waits for this prefetch, only written on the main thread
+        private volatile boolean mClaimed;
+        // when this was queued, or claimed if it is a prefetch, in System.nanoTime() time
+        private volatile long mQueuedAt = System.nanoTime();
+
+        Request(String url, String key, int width, int height, boolean prefetch) {
+            mUrl = url;
+            mKey = key;
+            mWidth = width;
+            mHeight = height;
+            mPrefetch = prefetch;
+        }
+
+        boolean cancelPrefetch() {
+            return mPrefetch && !mClaimed && mState.compareAndSet(STATE_QUEUED, STATE_CANCELLED);
+        }
+
+        @Override
+        public void run() {
+            if (!mState.compareAndSet(STATE_QUEUED, STATE_RUNNING)) {
+                // cancelled, or already run by the other executor
+                return;
+            }
+            if (!mPrefetch || mClaimed) {
+                mQueueTimes.record(System.nanoTime() - mQueuedAt);
+            }
+            Bitmap bitmap = mPrefetch && !mClaimed ? getCached(mKey) : null;
+            if (bitmap == null) {
+                try {
+                    bitmap = fetch(mUrl, mWidth, mHeight);
+                    // one reference for the cache, one until the bitmap is delivered
+                    acquire(bitmap);
+                    acquire(bitmap);
+                    if (mPrefetch && !mClaimed) {
+                        synchronized (mPrefetched) {
+                            mPrefetched.add(mKey);
+                        }
+                    }
+                    mMemoryCache.put(mKey, bitmap);
+                } catch (IOException | OutOfMemoryError e) {
+                    LOGW(TAG, "Failed to load " + mUrl, e);
+                    mFailureCount.incrementAndGet();
+                }
+            }
+            final Bitmap result = bitmap;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(result);
+                }
+            });
+        }
+
+        private void deliver(Bitmap bitmap) {
+            if (mInFlight.get(mKey) == this) {
+                mInFlight.remove(mKey);
+            }
+            if (mClaimed) {
+                // already counted as a prefetch hit when the first view started waiting
+                synchronized (mPrefetched) {
+                    mPrefetched.remove(mKey);
+                }
+            }
+            for (WeakReference<ImageView> reference : mWaiters) {
+                ImageView view = reference.get();
+                if (view == null || !mKey.equals(mTargets.get(view))) {
+                    continue;
+                }
+                mTargets.remove(view);
+                if (bitmap != null) {
+                    acquire(bitmap);
+                    show(view, bitmap, 0);
+                }
+            }
+            if (bitmap != null) {
+                release(bitmap);
+                if (!mPrefetch || mClaimed) {
+                    mTotalTimes.record(System.nanoTime() - mQueuedAt);
+                }
+            }
+        }
+    }
+
+    /**
+     * The counters and timings of the pipeline at a given time. Sizes are in bytes.
+     */
+    public static class Stats {
+
+        public final int memoryHits;
+        public final int memoryMisses;
+        public final int memoryEvictions;
+        public final long memorySize;
+        public final long memoryMaxSize;
+        public final int diskHits;
+        public final int diskMisses;
+        public final int diskEvictions;
+        public final long diskSize;
+        public final long diskMaxSize;
+        public final int diskCompactions;
+        public final int poolHits;
+        public final int poolMisses;
+        public final int poolEvictions;
+        public final long poolSize;
+        public final long poolMaxSize;
+        public final int networkFetches;
+        public final int failures;
+        public final int coalesced;
+        public final int prefetches;
+        public final int prefetchHits;
+        public final int prefetchCancels;
+        public final int prefetchWastes;
+        public final LatencyHistogram queueTimes;
+        public final LatencyHistogram connectTimes;
+        public final LatencyHistogram downloadTimes;
+        public final LatencyHistogram decodeTimes;
+        public final LatencyHistogram transformTimes;
+        public final LatencyHistogram totalTimes;
+
+        Stats(ImageLoader loader) {
+            LruCache<String, Bitmap> memoryCache = loader.mMemoryCache;
+            memoryHits = memoryCache.hitCount();
+            memoryMisses = memoryCache.missCount();
+            memoryEvictions = memoryCache.evictionCount();
+            memorySize = memoryCache.size();
+            memoryMaxSize = memoryCache.maxSize();
+            DiskImageCache diskCache = loader.mDiskCache;
+            diskHits = diskCache.hitCount();
+            diskMisses = diskCache.missCount();
+            diskEvictions = diskCache.evictionCount();
+            diskSize = diskCache.size();
+            diskMaxSize = diskCache.maxSize();
+            diskCompactions = diskCache.compactionCount();
+            BitmapPool pool = loader.mPool;
+            poolHits = pool.hitCount();
+            poolMisses = pool.missCount();
+            poolEvictions = pool.evictionCount();
+            poolSize = pool.size();
+            poolMaxSize = pool.maxSize();
+            networkFetches = loader.mNetworkFetchCount.get();
+            failures = loader.mFailureCount.get();
+            coalesced = loader.mCoalescedCount.get();
+            prefetches = loader.mPrefetchCount.get();
+            prefetchHits = loader.mPrefetchHitCount.get();
+            prefetchCancels = loader.mPrefetchCancelCount.get();
+            prefetchWastes = loader.mPrefetchWasteCount.get();
+            queueTimes = new LatencyHistogram(loader.mQueueTimes);
+            connectTimes = new LatencyHistogram(loader.mConnectTimes);
+            downloadTimes = new LatencyHistogram(loader.mDownloadTimes);
+            decodeTimes = new LatencyHistogram(loader.mDecodeTimes);
+            transformTimes = new LatencyHistogram(loader.mTransformTimes);
+            totalTimes = new LatencyHistogram(loader.mTotalTimes);
+        }
+
+        public float getMemoryHitRate() {
+            return rate(memoryHits, memoryMisses);
+        }
+
+        public float getDiskHitRate() {
+            return rate(diskHits, diskMisses);
+        }
+
+        public float getPoolHitRate() {
+            return rate(poolHits, poolMisses);
+        }
+
+        /**
+         * Returns the share of the prefetches that were not cancelled which ended up being shown.
+         */
+        public float getPrefetchHitRate() {
+            int completed = prefetches - prefetchCancels;
+            return completed <= 0 ? 0f : (float) prefetchHits / completed;
+        }
+
+        /**
+         * Returns the share of the images that were found in the memory cache, found on disk or
+         * fetched from the network, in that order, out of all the images that were obtained.
+         */
+        public float[] getSourceRates() {
+            int total = memoryHits + diskHits + networkFetches;
+            return new float[] {
+                    rate(memoryHits, total - memoryHits),
+                    rate(diskHits, total - diskHits),
+                    rate(networkFetches, total - networkFetches)
+            };
+        }
+
+        private static float rate(int hits, int misses) {
+            return hits + misses == 0 ? 0f : (float) hits / (hits + misses);
+        }
+
+        /**
+         * Writes a multi-line report of the counters and of the timing histograms.
+         */
+        public void dump(PrintWriter writer) {
+            float[] sources = getSourceRates();
+            writer.println("Images served from: memory " + percent(sources[0]) + ", disk "
+                    + percent(sources[1]) + ", network " + percent(sources[2]));
+            writer.println("Memory cache: hit rate " + percent(getMemoryHitRate()) + ", "
+                    + memoryHits + " hits, " + memoryMisses + " misses, " + memoryEvictions
+                    + " evictions, " + memorySize + "/" + memoryMaxSize + " bytes");
+            writer.println("Disk cache: hit rate " + percent(getDiskHitRate()) + ", "
+                    + diskHits + " hits, " + diskMisses + " misses, " + diskEvictions
+                    + " evictions, " + diskCompactions + " compactions, " + diskSize + "/"
+                    + diskMaxSize + " bytes");
+            writer.println("Bitmap pool: hit rate " + percent(getPoolHitRate()) + ", "
+                    + poolHits + " hits, " + poolMisses + " misses, " + poolEvictions
+                    + " evictions, " + poolSize + "/" + poolMaxSize + " bytes");
+            writer.println("Network: " + networkFetches + " fetches, " + failures + " failures, "
+                    + coalesced + " coalesced");
+            writer.println("Prefetch: hit rate " + percent(getPrefetchHitRate()) + ", "
+                    + prefetches + " requests, " + prefetchHits + " hits, " + prefetchCancels
+                    + " cancels, " + prefetchWastes + " wasted");
+            writer.println("Timings:");
+            queueTimes.dump("  ", writer);
+            connectTimes.dump("  ", writer);
+            downloadTimes.dump("  ", writer);
+            decodeTimes.dump("  ", writer);
+            transformTimes.dump("  ", writer);
+            totalTimes.dump("  ", writer);
+            writer.flush();
+        }
+
+        private static String percent(float rate) {
+            return Math.round(rate * 100) + "%";
+        }
+
+        @Override
+        public String toString() {
+            return "memory: " + memoryHits + " hits, " + memoryMisses + " misses, "
+                    + memoryEvictions + " evictions, " + memorySize + "/" + memoryMaxSize
+                    + " bytes; disk: " + diskHits + " hits, " + diskMisses + " misses, "
+                    + diskEvictions + " evictions, " + diskCompactions + " compactions, "
+                    + diskSize + "/" + diskMaxSize + " bytes; pool: " + poolHits + " hits, "
+                    + poolMisses + " misses, " + poolEvictions + " evictions, " + poolSize
+                    + "/" + poolMaxSize + " bytes; network: " + networkFetches + " fetches, "
+                    + failures + " failures, " + coalesced + " coalesced; prefetch: "
+                    + prefetches + " requests, " + prefetchHits + " hits, " + prefetchCancels
+                    + " cancels, " + prefetchWastes + " wasted";
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.images;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+/**
+ * Decides which of the sizes an image is published in should be loaded into a view. Target sizes
+ * are in pixels, so they already account for the density of the screen.
+ * <p>
+ * Variants whose aspect ratio is close to the one of the target are considered first. Among them,
+ * the smallest variant that covers the target is preferred, or the largest one if none does. On a
+ * metered network this is reversed to save bandwidth: the largest variant that fits within the
+ * target is preferred, or the smallest one if none does.
+ * <p>
+ * Callers go through the variants and keep the one for which {@link #isPreferred} holds against
+ * the best one so far, which does not need any allocation.
+ */
+public class ImageVariantSelector {
+
+    // how far the aspect ratio of a variant may be from the one of the target
+    private static final float MAX_ASPECT_DEVIATION = 1.5f;
+
+    private static ImageVariantSelector sInstance;
+
+    private volatile boolean mMetered;
+
+    /**
+     * Creates a selector for a network that is metered or not, which does not follow the active
+     * network; {@link #getInstance(Context)} returns the one that does.
+     */
+    public ImageVariantSelector(boolean metered) {
+        mMetered = metered;
+    }
+
+    public static synchronized ImageVariantSelector getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = newNetworkSelector(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private static ImageVariantSelector newNetworkSelector(Context context) {
+        final ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final ImageVariantSelector selector = new ImageVariantSelector(
+                ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager));
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                selector.mMetered =
+                        ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        return selector;
+    }
+
+    /**
+     * Returns {@code true} if the active network is metered, in which case smaller variants are
+     * preferred.
+     */
+    public boolean isMetered() {
+        return mMetered;
+    }
+
+    /**
+     * Returns {@code true} if a variant of {@code width} by {@code height} pixels should be loaded
+     * into a view of {@code targetWidth} by {@code targetHeight} rather than one of
+     * {@code bestWidth} by {@code bestHeight}. A target dimension of 0 leaves that side
+     * unconstrained.
+     */
+    public boolean isPreferred(int width, int height, int bestWidth, int bestHeight,
+            int targetWidth, int targetHeight) {
+        boolean matches = matchesAspect(width, height, targetWidth, targetHeight);
+        if (matches != matchesAspect(bestWidth, bestHeight, targetWidth, targetHeight)) {
+            return matches;
+        }
+        long area = (long) width * height;
+        long bestArea = (long) bestWidth * bestHeight;
+        if (mMetered) {
+            boolean fits = fits(width, height, targetWidth, targetHeight);
+            if (fits != fits(bestWidth, bestHeight, targetWidth, targetHeight)) {
+                return fits;
+            }
+            return fits ? area > bestArea : area < bestArea;
+        }
+        boolean covers = covers(width, height, targetWidth, targetHeight);
+        if (covers != covers(bestWidth, bestHeight, targetWidth, targetHeight)) {
+            return covers;
+        }
+        return covers ? area < bestArea : area > bestArea;
+    }
+
+    private static boolean matchesAspect(int width, int height, int targetWidth,
+            int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0 || width <= 0 || height <= 0) {
+            return true;
+        }
+        float ratio = ((float) width * targetHeight) / ((float) height * targetWidth);
+        return ratio <= MAX_ASPECT_DEVIATION && ratio >= 1 / MAX_ASPECT_DEVIATION;
+    }
+
+    private static boolean covers(int width, int height, int targetWidth, int targetHeight) {
+        return (targetWidth <= 0 || width >= targetWidth)
+                && (targetHeight <= 0 || height >= targetHeight);
+    }
+
+    private static boolean fits(int width, int height, int targetWidth, int targetHeight) {
+        return (targetWidth <= 0 || width <= targetWidth)
+                && (targetHeight <= 0 || height <= targetHeight);
+    }
+}
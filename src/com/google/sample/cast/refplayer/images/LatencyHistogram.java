@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.images;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A histogram of durations with logarithmic buckets: the first one counts the durations under a
+ * millisecond, and each of the following ones the durations up to twice the bound of the one
+ * before, the last one taking everything above. Recording does not allocate, so it can be done
+ * on every request.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 16;
+
+    private final String mName;
+    private final int[] mCounts = new int[BUCKET_COUNT];
+    private int mCount;
+    private long mTotalMs;
+    private long mMaxMs;
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    /**
+     * Returns a copy of {@code other}, which is not modified by later recordings.
+     */
+    public LatencyHistogram(LatencyHistogram other) {
+        mName = other.mName;
+        synchronized (other) {
+            System.arraycopy(other.mCounts, 0, mCounts, 0, BUCKET_COUNT);
+            mCount = other.mCount;
+            mTotalMs = other.mTotalMs;
+            mMaxMs = other.mMaxMs;
+        }
+    }
+
+    /**
+     * Records a duration given in nanoseconds, as measured with {@link System#nanoTime()}.
+     */
+    public synchronized void record(long durationNanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(Math.max(0, durationNanos));
+        mCounts[getBucket(ms)]++;
+        mCount++;
+        mTotalMs += ms;
+        mMaxMs = Math.max(mMaxMs, ms);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMeanMs() {
+        return mCount == 0 ? 0 : mTotalMs / mCount;
+    }
+
+    public synchronized long getMaxMs() {
+        return mMaxMs;
+    }
+
+    /**
+     * Returns the upper bound, in milliseconds, of the bucket that holds the given percentile of
+     * the recorded durations, or 0 if none were recorded. The bound is capped by the largest
+     * duration recorded.
+     */
+    public synchronized long getPercentileMs(int percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long threshold = ((long) mCount * percentile + 99) / 100;
+        int seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= threshold) {
+                // the last bucket has no upper bound
+                return i == BUCKET_COUNT - 1 ? mMaxMs : Math.min(getUpperBoundMs(i), mMaxMs);
+            }
+        }
+        return mMaxMs;
+    }
+
+    /**
+     * Writes the summary of the histogram on one line, and its non empty buckets on the next.
+     */
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println(toString());
+        if (mCount == 0) {
+            return;
+        }
+        writer.print(prefix);
+        writer.print(" ");
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (mCounts[i] == 0) {
+                continue;
+            }
+            writer.print(' ');
+            writer.print(i == BUCKET_COUNT - 1 ? ">" + getUpperBoundMs(i - 1) : "<"
+                    + getUpperBoundMs(i));
+            writer.print("ms:");
+            writer.print(mCounts[i]);
+        }
+        writer.println();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return mName + ": " + mCount + " samples, mean " + getMeanMs() + "ms, p50 "
+                + getPercentileMs(50) + "ms, p90 " + getPercentileMs(90) + "ms, p99 "
+                + getPercentileMs(99) + "ms, max " + mMaxMs + "ms";
+    }
+
+    private static int getBucket(long ms) {
+        // bucket i holds [2^(i-1), 2^i) milliseconds
+        int bucket = 64 - Long.numberOfLeadingZeros(ms);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    private static long getUpperBoundMs(int bucket) {
+        return 1L << bucket;
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.google.sample.cast.refplayer.mediaplayer;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGE;
+
 import com.google.android.gms.cast.ApplicationMetadata;
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.gms.cast.MediaMetadata;
@@ -24,8 +27,10 @@ import com.google.android.libraries.cast.companionlibrary.cast.callbacks.VideoCa
 import com.google.sample.cast.refplayer.CastApplication;
 import com.google.sample.cast.refplayer.R;
 import com.google.sample.cast.refplayer.browser.VideoProvider;
+import com.google.sample.cast.refplayer.images.ImageLoader;
 import com.google.sample.cast.refplayer.queue.ui.QueueListViewActivity;
 import com.google.sample.cast.refplayer.settings.CastPreference;
+import com.google.sample.cast.refplayer.utils.LogUtils;
 import com.google.sample.cast.refplayer.utils.Utils;
 
 import android.annotation.SuppressLint;
@@ -46,7 +51,7 @@ import android.support.v4.view.ViewCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.text.method.ScrollingMovementMethod;
-import android.util.Log;
+import android.util.DisplayMetrics;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -64,8 +69,6 @@ import android.widget.SeekBar.OnSeekBarChangeListener;
 import android.widget.TextView;
 import android.widget.VideoView;
 
-import com.androidquery.AQuery;
-
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -90,8 +93,10 @@ public class LocalPlayerActivity extends AppCompatActivity {
     private PlaybackState mPlaybackState;
     private final Handler mHandler = new Handler();
     private final float mAspectRatio = 72f / 128;
-    private AQuery mAquery;
+    private ImageLoader mImageLoader;
     private MediaInfo mSelectedMedia;
+    // the thumbnail the browser showed for the media, if it was opened from there
+    private String mPreviewUrl;
     private boolean mControllersVisible;
     private int mDuration;
     protected MediaInfo mRemoteMediaInformation;
@@ -118,7 +123,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.player_activity);
-        mAquery = new AQuery(this);
+        mImageLoader = ImageLoader.getInstance(this);
         loadViews();
         mCastManager = VideoCastManager.getInstance();
         setupControlsCallbacks();
@@ -128,11 +133,14 @@ public class LocalPlayerActivity extends AppCompatActivity {
         if (null != b) {
             mSelectedMedia = com.google.android.libraries.cast.companionlibrary.utils.Utils
                     .bundleToMediaInfo(getIntent().getBundleExtra("media"));
+            mPreviewUrl = b.getString("previewUrl");
             setupActionBar();
             boolean shouldStartPlayback = b.getBoolean("shouldStart");
             int startPosition = b.getInt("startPosition", 0);
             mVideoView.setVideoURI(Uri.parse(mSelectedMedia.getContentId()));
-            Log.d(TAG, "Setting url of the VideoView to: " + mSelectedMedia.getContentId());
+            if (LogUtils.DEBUG) {
+                LOGD(TAG, "Setting url of the VideoView to: " + mSelectedMedia.getContentId());
+            }
             if (shouldStartPlayback) {
                 // this will be the case only if we are coming from the
                 // CastControllerActivity by disconnecting from a device
@@ -166,7 +174,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
             @Override
             public void onApplicationConnected(ApplicationMetadata appMetadata,
                     String sessionId, boolean wasLaunched) {
-                Log.d(TAG, "onApplicationLaunched() is reached");
+                LOGD(TAG, "onApplicationLaunched() is reached");
                 if (null != mSelectedMedia) {
 
                     if (mPlaybackState == PlaybackState.PLAYING) {
@@ -189,13 +197,16 @@ public class LocalPlayerActivity extends AppCompatActivity {
 
             @Override
             public void onApplicationDisconnected(int errorCode) {
-                Log.d(TAG, "onApplicationDisconnected() is reached with errorCode: " + errorCode);
+                if (LogUtils.DEBUG) {
+                    LOGD(TAG, "onApplicationDisconnected() is reached with errorCode: "
+                            + errorCode);
+                }
                 updatePlaybackLocation(PlaybackLocation.LOCAL);
             }
 
             @Override
             public void onDisconnected() {
-                Log.d(TAG, "onDisconnected() is reached");
+                LOGD(TAG, "onDisconnected() is reached");
                 mPlaybackState = PlaybackState.IDLE;
                 mLocation = PlaybackLocation.LOCAL;
                 updatePlayButton(mPlaybackState);
@@ -282,7 +293,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
                     case LOCAL:
                         mVideoView.start();
                         if (!mCastManager.isConnecting()) {
-                            Log.d(TAG, "Playing locally...");
+                            LOGD(TAG, "Playing locally...");
                             mCastManager.clearPersistedConnectionInfo(
                                     VideoCastManager.CLEAR_SESSION);
                         }
@@ -341,9 +352,25 @@ public class LocalPlayerActivity extends AppCompatActivity {
         mCastManager.startVideoCastControllerActivity(this, mSelectedMedia, position, autoPlay);
     }
 
-    private void setCoverArtStatus(String url) {
-        if (null != url) {
-            mAquery.id(mCoverArt).image(url);
+    /**
+     * Shows the cover art, or the video if {@code thumbnailUrl} is {@code null}. The thumbnail the
+     * browser has already loaded is shown at once, so that the shared element transition has an
+     * image to work with, and the large image replaces it as soon as it has been decoded. That is
+     * the variant the browser row picked when it is known, and {@code thumbnailUrl} otherwise.
+     */
+    private void setCoverArtStatus(String thumbnailUrl) {
+        if (null != thumbnailUrl) {
+            String url = com.google.android.libraries.cast.companionlibrary.utils.Utils
+                    .getImageUrl(mSelectedMedia, 1);
+            if (url == null) {
+                url = thumbnailUrl;
+            }
+            // the cover art fills the player, which is at most as large as the screen
+            DisplayMetrics metrics = getResources().getDisplayMetrics();
+            mImageLoader.load(url, mCoverArt, metrics.widthPixels, metrics.heightPixels,
+                    mPreviewUrl != null ? mPreviewUrl : thumbnailUrl,
+                    getResources().getDimensionPixelSize(R.dimen.browse_row_image_width),
+                    getResources().getDimensionPixelSize(R.dimen.browse_row_image_height), 0);
             mCoverArt.setVisibility(View.VISIBLE);
             mVideoView.setVisibility(View.INVISIBLE);
         } else {
@@ -353,7 +380,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
     }
 
     private void stopTrickplayTimer() {
-        Log.d(TAG, "Stopped TrickPlay Timer");
+        LOGD(TAG, "Stopped TrickPlay Timer");
         if (null != mSeekbarTimer) {
             mSeekbarTimer.cancel();
         }
@@ -363,7 +390,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
         stopTrickplayTimer();
         mSeekbarTimer = new Timer();
         mSeekbarTimer.scheduleAtFixedRate(new UpdateSeekbarTask(), 100, 1000);
-        Log.d(TAG, "Restarted TrickPlay Timer");
+        LOGD(TAG, "Restarted TrickPlay Timer");
     }
 
     private void stopControllersTimer() {
@@ -399,7 +426,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        Log.d(TAG, "onPause() was called");
+        LOGD(TAG, "onPause() was called");
         if (mLocation == PlaybackLocation.LOCAL) {
 
             if (null != mSeekbarTimer) {
@@ -421,13 +448,13 @@ public class LocalPlayerActivity extends AppCompatActivity {
 
     @Override
     protected void onStop() {
-        Log.d(TAG, "onStop() was called");
+        LOGD(TAG, "onStop() was called");
         super.onStop();
     }
 
     @Override
     protected void onDestroy() {
-        Log.d(TAG, "onDestroy() is called");
+        LOGD(TAG, "onDestroy() is called");
         if (null != mCastManager) {
             mCastConsumer = null;
         }
@@ -438,13 +465,13 @@ public class LocalPlayerActivity extends AppCompatActivity {
 
     @Override
     protected void onStart() {
-        Log.d(TAG, "onStart was called");
+        LOGD(TAG, "onStart was called");
         super.onStart();
     }
 
     @Override
     protected void onResume() {
-        Log.d(TAG, "onResume() was called");
+        LOGD(TAG, "onResume() was called");
         mCastManager = VideoCastManager.getInstance();
         mCastManager.addVideoCastConsumer(mCastConsumer);
         mCastManager.incrementUiCounter();
@@ -493,7 +520,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
 
             @Override
             public boolean onError(MediaPlayer mp, int what, int extra) {
-                Log.e(TAG, "OnErrorListener.onError(): VideoView encountered an " +
+                LOGE(TAG, "OnErrorListener.onError(): VideoView encountered an " +
                         "error, what: " + what + ", extra: " + extra);
                 String msg;
                 if (extra == MediaPlayer.MEDIA_ERROR_TIMED_OUT) {
@@ -515,7 +542,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
 
             @Override
             public void onPrepared(MediaPlayer mp) {
-                Log.d(TAG, "onPrepared is reached");
+                LOGD(TAG, "onPrepared is reached");
                 mDuration = mp.getDuration();
                 mEndText.setText(com.google.android.libraries.cast.companionlibrary.utils.Utils
                         .formatMillis(mDuration));
@@ -529,7 +556,7 @@ public class LocalPlayerActivity extends AppCompatActivity {
             @Override
             public void onCompletion(MediaPlayer mp) {
                 stopTrickplayTimer();
-                Log.d(TAG, "setOnCompletionListener()");
+                LOGD(TAG, "setOnCompletionListener()");
                 mPlaybackState = PlaybackState.IDLE;
                 updatePlayButton(mPlaybackState);
             }
@@ -601,7 +628,9 @@ public class LocalPlayerActivity extends AppCompatActivity {
     }
 
     private void updatePlayButton(PlaybackState state) {
-        Log.d(TAG, "Controls: PlayBackState: " + state);
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "Controls: PlayBackState: " + state);
+        }
         boolean isConnected = mCastManager.isConnected() || mCastManager.isConnecting();
         mControllers.setVisibility(isConnected ? View.GONE : View.VISIBLE);
         mPlayCircle.setVisibility(isConnected ? View.GONE : View.VISIBLE);
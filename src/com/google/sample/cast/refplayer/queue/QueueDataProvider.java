@@ -16,6 +16,9 @@
 
 package com.google.sample.cast.refplayer.queue;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGE;
+
 import com.google.android.gms.cast.MediaQueueItem;
 import com.google.android.gms.cast.MediaStatus;
 import com.google.android.libraries.cast.companionlibrary.cast.MediaQueue;
@@ -23,8 +26,9 @@ import com.google.android.libraries.cast.companionlibrary.cast.VideoCastManager;
 import com.google.android.libraries.cast.companionlibrary.cast.callbacks.VideoCastConsumerImpl;
 import com.google.android.libraries.cast.companionlibrary.cast.exceptions.NoConnectionException;
 import com.google.android.libraries.cast.companionlibrary.cast.exceptions.TransientNetworkDisconnectionException;
+import com.google.sample.cast.refplayer.utils.CoalescingDispatcher;
+import com.google.sample.cast.refplayer.utils.LogUtils;
 
-import android.util.Log;
 import android.view.View;
 
 import java.util.List;
@@ -38,11 +42,26 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * reflected here or not; when in "detached" mode, it means that its own copy of the queue is not
  * kept up to date with the one that the cast framework has. This is needed to preserve the queue
  * when the media session ends.
+ * <p>
+ * The cast framework reports changes in bursts, for instance while a queue loads. The listener is
+ * told about them at most once per frame, through a {@link CoalescingDispatcher}, with the
+ * changes of the whole burst merged. A new list of items is only swapped in right before the
+ * listener is told, so that the list and the items it was last told about always agree.
  */
 public class QueueDataProvider {
 
     private static final String TAG = "QueueDataProvider";
     public static final int INVALID = -1;
+
+    /** The items of the queue, or their order, have changed. */
+    public static final int CHANGE_STRUCTURE = 1;
+    /** Another item of the queue is now the current one. */
+    public static final int CHANGE_CURRENT_ITEM = 1 << 1;
+    /** Another item of the queue, or none, is now the upcoming one. */
+    public static final int CHANGE_UPCOMING_ITEM = 1 << 2;
+    /** The player state of the current item has changed. */
+    public static final int CHANGE_PLAYER_STATE = 1 << 3;
+
     private final VideoCastManager mCastManager;
     private List<MediaQueueItem> mQueue = new CopyOnWriteArrayList<>();
     private static QueueDataProvider mInstance;
@@ -53,6 +72,10 @@ public class QueueDataProvider {
     private MediaQueueItem mUpcomingItem;
     private OnQueueDataChangedListener mListener;
     private boolean mDetachedQueue = true;
+    private int mPlayerState = MediaStatus.PLAYER_STATE_UNKNOWN;
+    // the latest queue reported by the cast framework, until the listener is told about it
+    private List<MediaQueueItem> mPendingQueue;
+    private final CoalescingDispatcher mDispatcher;
 
     private QueueDataProvider(){
         mCastManager = VideoCastManager.getInstance();
@@ -70,59 +93,86 @@ public class QueueDataProvider {
             mShuffle = false;
             mCurrentIem = null;
         }
+        mDispatcher = new CoalescingDispatcher(new CoalescingDispatcher.Listener() {
+            @Override
+            public void onDispatch(int changes) {
+                if (mPendingQueue != null) {
+                    mQueue = mPendingQueue;
+                    mPendingQueue = null;
+                }
+                if (mListener != null) {
+                    mListener.onQueueDataChanged(changes);
+                }
+            }
+        });
         VideoCastConsumerImpl castConsumer = new VideoCastConsumerImpl() {
             @Override
             public void onMediaQueueUpdated(List<MediaQueueItem> queueItems, MediaQueueItem item,
                     int repeatMode, boolean shuffle) {
                 if (queueItems == null) {
-                    Log.d(TAG, "Queue is cleared");
-                    mQueue = new CopyOnWriteArrayList<>();
+                    LOGD(TAG, "Queue is cleared");
+                    mPendingQueue = new CopyOnWriteArrayList<>();
                 } else {
-                    Log.d(TAG, "Queue is updated with a list of size: " + queueItems.size());
+                    if (LogUtils.DEBUG) {
+                        LOGD(TAG, "Queue is updated with a list of size: " + queueItems.size());
+                    }
                     if (queueItems.size() > 0) {
-                        mQueue = new CopyOnWriteArrayList<>(queueItems);
+                        mPendingQueue = new CopyOnWriteArrayList<>(queueItems);
                         mDetachedQueue = false;
                     } else {
-                        mQueue = new CopyOnWriteArrayList<>();
+                        mPendingQueue = new CopyOnWriteArrayList<>();
                         mDetachedQueue = true;
                     }
                 }
                 mRepeatMode = repeatMode;
                 mShuffle = shuffle;
                 mCurrentIem = item;
-                if (mListener != null) {
-                    mListener.onQueueDataChanged();
-                }
-                Log.d(TAG, "Queue was updated");
+                notifyChanged(CHANGE_STRUCTURE);
+                LOGD(TAG, "Queue was updated");
             }
 
             @Override
             public void onRemoteMediaPreloadStatusUpdated(MediaQueueItem item) {
-                Log.d(TAG, "onRemoteMediaPreloadStatusUpdated() with item=" + item);
+                if (LogUtils.DEBUG) {
+                    LOGD(TAG, "onRemoteMediaPreloadStatusUpdated() with item=" + item);
+                }
+                boolean changed = getItemId(item) != getItemId(mUpcomingItem);
                 mUpcomingItem = item;
-                if (mListener != null) {
-                    mListener.onQueueDataChanged();
+                if (changed) {
+                    notifyChanged(CHANGE_UPCOMING_ITEM);
                 }
             }
 
             @Override
             public void onRemoteMediaPlayerStatusUpdated() {
-                if (mListener != null) {
-                    MediaStatus mediaStatus = mCastManager.getMediaStatus();
-                    if (mediaStatus != null) {
-                        int itemId = mediaStatus.getCurrentItemId();
-                        mCurrentIem = mediaStatus.getQueueItemById(itemId);
-                    }
-                    mListener.onQueueDataChanged();
+                // this comes many times per second during playback, but usually nothing that
+                // the queue shows has changed
+                MediaStatus mediaStatus = mCastManager.getMediaStatus();
+                if (mediaStatus == null) {
+                    return;
+                }
+                int changes = 0;
+                MediaQueueItem current = mediaStatus.getQueueItemById(
+                        mediaStatus.getCurrentItemId());
+                if (getItemId(current) != getItemId(mCurrentIem)) {
+                    changes |= CHANGE_CURRENT_ITEM;
+                }
+                mCurrentIem = current;
+                if (mediaStatus.getPlayerState() != mPlayerState) {
+                    mPlayerState = mediaStatus.getPlayerState();
+                    changes |= CHANGE_PLAYER_STATE;
+                }
+                if (changes != 0) {
+                    notifyChanged(changes);
                 }
             }
 
             @Override
             public void onDisconnected() {
-                clearQueue();
-                if (mListener != null) {
-                    mListener.onQueueDataChanged();
-                }
+                mPendingQueue = new CopyOnWriteArrayList<>();
+                mDetachedQueue = true;
+                mCurrentIem = null;
+                notifyChanged(CHANGE_STRUCTURE);
             }
 
             @Override
@@ -138,6 +188,25 @@ public class QueueDataProvider {
         mCastManager.addVideoCastConsumer(castConsumer);
     }
 
+    private void notifyChanged(int changes) {
+        mDispatcher.post(changes);
+    }
+
+    /**
+     * Returns the dispatcher that merges the changes reported to the listener, whose counters
+     * tell how many of them were merged.
+     */
+    public CoalescingDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    /**
+     * Returns the id of {@code item}, or {@link #INVALID} if it is {@code null}.
+     */
+    public static int getItemId(MediaQueueItem item) {
+        return item == null ? INVALID : item.getItemId();
+    }
+
     public void onUpcomingStopClicked(View view, MediaQueueItem upcomingItem) {
         // need to truncate the queue on the remote device so that we can complete the playback of
         // the current item but not go any further. Alternatively, one could just stop the playback
@@ -150,7 +219,7 @@ public class QueueDataProvider {
         try {
             mCastManager.queueRemoveItems(itemIds, null);
         } catch (TransientNetworkDisconnectionException | NoConnectionException e) {
-            Log.e(TAG, "onUpcomingStopClicked(): Failed to remove items from queue", e);
+            LOGE(TAG, "onUpcomingStopClicked(): Failed to remove items from queue", e);
         }
     }
 
@@ -158,7 +227,7 @@ public class QueueDataProvider {
         try {
             mCastManager.queueJumpToItem(upcomingItem.getItemId(), null);
         } catch (TransientNetworkDisconnectionException | NoConnectionException e) {
-            Log.e(TAG, "onUpcomingPlayClicked(): Failed to remove items from queue", e);
+            LOGE(TAG, "onUpcomingPlayClicked(): Failed to remove items from queue", e);
         }
     }
 
@@ -190,7 +259,7 @@ public class QueueDataProvider {
             try {
                 mCastManager.queueRemoveItem(mQueue.get(position).getItemId(), null);
             } catch (TransientNetworkDisconnectionException | NoConnectionException e) {
-                Log.e(TAG, "Failed to remove a queue item at position " + position, e);
+                LOGE(TAG, "Failed to remove a queue item at position " + position, e);
             }
         }
     }
@@ -208,7 +277,7 @@ public class QueueDataProvider {
                 mCastManager.queueRemoveItems(itemIds, null);
                 mQueue.clear();
             } catch (TransientNetworkDisconnectionException | NoConnectionException e) {
-                Log.e(TAG, "Failed to remove all items from the queue", e);
+                LOGE(TAG, "Failed to remove all items from the queue", e);
             }
         }
     }
@@ -223,7 +292,7 @@ public class QueueDataProvider {
             final MediaQueueItem item = mQueue.remove(fromPosition);
             mQueue.add(toPosition, item);
         } catch (TransientNetworkDisconnectionException | NoConnectionException e) {
-            Log.e(TAG, String.format("Failed to move a queue item from position %d to %d",
+            LOGE(TAG, String.format("Failed to move a queue item from position %d to %d",
                     fromPosition, toPosition), e);
         }
     }
@@ -259,7 +328,9 @@ public class QueueDataProvider {
     }
 
     public MediaQueueItem getUpcomingItem() {
-        Log.d(TAG, "[upcoming] getUpcomingItem() returning " + mUpcomingItem);
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "[upcoming] getUpcomingItem() returning " + mUpcomingItem);
+        }
         return mUpcomingItem;
     }
 
@@ -272,6 +343,11 @@ public class QueueDataProvider {
     }
 
     public interface OnQueueDataChangedListener {
-        void onQueueDataChanged();
+
+        /**
+         * Called when the queue has changed. {@code changes} is a combination of the
+         * {@code CHANGE_*} flags that tells what did.
+         */
+        void onQueueDataChanged(int changes);
     }
 }
@@ -16,19 +16,23 @@
 
 package com.google.sample.cast.refplayer.queue.ui;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.gms.cast.MediaMetadata;
 import com.google.android.gms.cast.MediaQueueItem;
 import com.google.android.gms.cast.MediaStatus;
 import com.google.android.libraries.cast.companionlibrary.cast.VideoCastManager;
 import com.google.sample.cast.refplayer.R;
+import com.google.sample.cast.refplayer.images.ImageLoader;
 import com.google.sample.cast.refplayer.queue.QueueDataProvider;
+import com.google.sample.cast.refplayer.utils.LogUtils;
 
 import android.content.Context;
 import android.support.v4.view.MotionEventCompat;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.helper.ItemTouchHelper;
-import android.util.Log;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -37,7 +41,9 @@ import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.androidquery.AQuery;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * An adapter to show the list of queue items.
@@ -47,8 +53,15 @@ public class QueueListAdapter
         implements QueueItemTouchHelperCallback.ItemTouchHelperAdapter {
 
     private static final String TAG = "QueueListAdapter";
+    // payloads of a partial rebind: only the controls, or only the play/pause button, changed
+    private static final Object PAYLOAD_CONTROLS = new Object();
+    private static final Object PAYLOAD_PLAYER_STATE = new Object();
     private final QueueDataProvider mProvider;
     private final VideoCastManager mCastManager;
+    private final ImageLoader mImageLoader;
+    private final int mImageSize;
+    // the memory cache keys of the thumbnails by url, so that rebinding a row builds nothing
+    private final Map<String, String> mImageKeys = new HashMap<>();
     private static final int sPlayResource = R.drawable.ic_play_arrow_grey600_48dp;
     private static final int sPauseResource = R.drawable.ic_pause_grey600_48dp;
     private static final int sDragHandlerDarkResource = R.drawable.ic_drag_updown_grey_24dp;
@@ -57,36 +70,33 @@ public class QueueListAdapter
     private static int sBlackColor;
     private static int sYellowColor;
     private static int sGreyColor;
+    private static String sUpNextText;
     private final OnStartDragListener mDragStartListener;
-    private View.OnClickListener mItemViewOnClickListener;
-    private static final float mAspectRatio = 1f;
     private EventListener mEventListener;
+    // the ids of the current and upcoming items the last time the rows were told about them
+    private int mCurrentItemId;
+    private int mUpcomingItemId;
 
     public QueueListAdapter(Context context, OnStartDragListener dragStartListener) {
         mDragStartListener = dragStartListener;
         mCastManager = VideoCastManager.getInstance();
         mProvider = QueueDataProvider.getInstance();
+        mImageLoader = ImageLoader.getInstance(context);
+        mImageSize = context.getResources().getDimensionPixelSize(R.dimen.queue_row_image_size);
         mProvider.setOnQueueDataChangedListener(new QueueDataProvider.OnQueueDataChangedListener() {
             @Override
-            public void onQueueDataChanged() {
-                notifyDataSetChanged();
+            public void onQueueDataChanged(int changes) {
+                onQueueChanged(changes);
             }
         });
-        mItemViewOnClickListener = new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                if (v.getTag(R.string.queue_tag_item) != null) {
-                    MediaQueueItem item = (MediaQueueItem) v.getTag(R.string.queue_tag_item);
-                    Log.d(TAG, item.getItemId() + "");
-                }
-                onItemViewClick(v);
-            }
-        };
+        mCurrentItemId = QueueDataProvider.getItemId(mProvider.getCurrentItem());
+        mUpcomingItemId = QueueDataProvider.getItemId(mProvider.getUpcomingItem());
         setHasStableIds(true);
         sWhiteColor = context.getResources().getColor(R.color.white);
         sGreyColor = context.getResources().getColor(android.R.color.secondary_text_light);
         sBlackColor = context.getResources().getColor(R.color.black);
         sYellowColor = context.getResources().getColor(R.color.ccl_mini_upcoming_upnext_color);
+        sUpNextText = context.getString(R.string.ccl_mini_upnext);
     }
 
     @Override
@@ -95,6 +105,41 @@ public class QueueListAdapter
         return (long) item.getItemId();
     }
 
+    /**
+     * Rebinds the rows that {@code changes} affects: all of them if the queue itself changed,
+     * otherwise only the controls of the rows that stopped or started being the current or the
+     * upcoming one, and the play/pause button of the current one.
+     */
+    private void onQueueChanged(int changes) {
+        int currentItemId = QueueDataProvider.getItemId(mProvider.getCurrentItem());
+        int upcomingItemId = QueueDataProvider.getItemId(mProvider.getUpcomingItem());
+        if ((changes & QueueDataProvider.CHANGE_STRUCTURE) != 0) {
+            mImageKeys.clear();
+            mCurrentItemId = currentItemId;
+            mUpcomingItemId = upcomingItemId;
+            notifyDataSetChanged();
+            return;
+        }
+        if (currentItemId != mCurrentItemId || upcomingItemId != mUpcomingItemId) {
+            notifyItemIdChanged(mCurrentItemId, PAYLOAD_CONTROLS);
+            notifyItemIdChanged(mUpcomingItemId, PAYLOAD_CONTROLS);
+            mCurrentItemId = currentItemId;
+            mUpcomingItemId = upcomingItemId;
+            notifyItemIdChanged(mCurrentItemId, PAYLOAD_CONTROLS);
+            notifyItemIdChanged(mUpcomingItemId, PAYLOAD_CONTROLS);
+        } else if ((changes & QueueDataProvider.CHANGE_PLAYER_STATE) != 0) {
+            notifyItemIdChanged(mCurrentItemId, PAYLOAD_PLAYER_STATE);
+        }
+    }
+
+    private void notifyItemIdChanged(int itemId, Object payload) {
+        int position = mProvider.getPositionByItemId(itemId);
+        if (position != QueueDataProvider.INVALID) {
+            // the same row may be notified twice, RecyclerView collects the payloads
+            notifyItemChanged(position, payload);
+        }
+    }
+
     private void onItemViewClick(View v) {
         if (mEventListener != null) {
             mEventListener.onItemViewClicked(v);
@@ -121,55 +166,70 @@ public class QueueListAdapter
             int viewType) {
         final LayoutInflater inflater = LayoutInflater.from(parent.getContext());
         final View v = inflater.inflate(R.layout.queue_row, parent, false);
-        return new QueueItemViewHolder(v);
+        QueueItemViewHolder holder = new QueueItemViewHolder(v);
+        // set once for the whole life of the row rather than on every bind
+        RowListener listener = new RowListener(holder);
+        holder.mContainer.setOnClickListener(listener);
+        holder.mPlayPause.setOnClickListener(listener);
+        holder.mPlayUpcoming.setOnClickListener(listener);
+        holder.mStopUpcoming.setOnClickListener(listener);
+        holder.mDragHandle.setOnTouchListener(listener);
+        return holder;
     }
 
     @Override
-    public void onBindViewHolder(final QueueItemViewHolder holder, int position) {
-        Log.d(TAG, "[upcoming] onBindViewHolder() for position: " + position);
-        final MediaQueueItem item = mProvider.getItem(position);
-        holder.mContainer.setTag(R.string.queue_tag_item, item);
-        holder.mPlayPause.setTag(R.string.queue_tag_item, item);
-        holder.mPlayUpcoming.setTag(R.string.queue_tag_item, item);
-        holder.mStopUpcoming.setTag(R.string.queue_tag_item, item);
-
-        // set listeners
-        holder.mContainer.setOnClickListener(mItemViewOnClickListener);
-        holder.mPlayPause.setOnClickListener(mItemViewOnClickListener);
-        holder.mPlayUpcoming.setOnClickListener(mItemViewOnClickListener);
-        holder.mStopUpcoming.setOnClickListener(mItemViewOnClickListener);
-
+    public void onBindViewHolder(QueueItemViewHolder holder, int position) {
+        MediaQueueItem item = mProvider.getItem(position);
         MediaInfo info = item.getMedia();
         MediaMetadata metaData = info.getMetadata();
-        holder.mTitleView.setText(metaData.getString(MediaMetadata.KEY_TITLE));
-        holder.mDescriptionView.setText(metaData.getString(MediaMetadata.KEY_SUBTITLE));
-        AQuery aq = new AQuery(holder.itemView);
-        if (!metaData.getImages().isEmpty()) {
-            aq.id(holder.mImageView).width(64)
-                    .image(metaData.getImages().get(0).getUrl().toString(), true, true, 0,
-                            R.drawable.default_video, null, 0, mAspectRatio);
+        holder.setTitle(metaData.getString(MediaMetadata.KEY_TITLE));
+        // Uri caches its string form, so only the key could need building
+        String imageUrl = metaData.getImages().isEmpty() ? null
+                : metaData.getImages().get(0).getUrl().toString();
+        String imageKey = null;
+        if (imageUrl != null) {
+            imageKey = mImageKeys.get(imageUrl);
+            if (imageKey == null) {
+                imageKey = ImageLoader.getCacheKey(imageUrl, mImageSize, mImageSize);
+                mImageKeys.put(imageUrl, imageKey);
+            }
         }
+        mImageLoader.load(imageUrl, imageKey, holder.mImageView, mImageSize, mImageSize,
+                R.drawable.default_video);
+        bindControls(holder, item);
+    }
 
-        holder.mDragHandle.setOnTouchListener(new View.OnTouchListener() {
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (MotionEventCompat.getActionMasked(event) == MotionEvent.ACTION_DOWN) {
-                    mDragStartListener.onStartDrag(holder);
-                }
-                return false;
-            }
-        });
+    @Override
+    public void onBindViewHolder(QueueItemViewHolder holder, int position, List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+        } else if (payloads.contains(PAYLOAD_CONTROLS)) {
+            bindControls(holder, mProvider.getItem(position));
+        } else if (mProvider.getItem(position).getItemId() == mCurrentItemId) {
+            // the button is hidden while the player is neither playing nor paused
+            holder.mPlayPause.setVisibility(View.VISIBLE);
+            updateImageResource(holder.mPlayPause);
+        }
+    }
 
-        if (item == mProvider.getCurrentItem()) {
+    /**
+     * Binds what depends on whether {@code item} is the current or the upcoming item, which is
+     * all that a {@link #PAYLOAD_CONTROLS} rebind updates.
+     */
+    private void bindControls(QueueItemViewHolder holder, MediaQueueItem item) {
+        if (item.getItemId() == mCurrentItemId) {
             holder.updateControlsStatus(QueueItemViewHolder.ControlStatus.CURRENT);
+            // the button is hidden while the player is neither playing nor paused
+            holder.mPlayPause.setVisibility(View.VISIBLE);
             updateImageResource(holder.mPlayPause);
-        } else if (item == mProvider.getUpcomingItem()) {
+        } else if (item.getItemId() == mUpcomingItemId) {
             holder.updateControlsStatus(QueueItemViewHolder.ControlStatus.UPCOMING);
         } else {
             holder.updateControlsStatus(QueueItemViewHolder.ControlStatus.NONE);
-            holder.mPlayPause.setVisibility(View.GONE);
         }
-
+        // the upcoming row shows "up next" instead of the subtitle
+        holder.setDescription(item.getItemId() == mUpcomingItemId ? sUpNextText
+                : item.getMedia().getMetadata().getString(MediaMetadata.KEY_SUBTITLE));
     }
 
     /**
@@ -189,6 +249,46 @@ public class QueueListAdapter
         }
     }
 
+    /**
+     * Handles the clicks on the buttons of a row and the touches on its drag handle. The item is
+     * looked up when a button is clicked, and tagged on the button for the {@link EventListener}.
+     */
+    private class RowListener implements View.OnClickListener, View.OnTouchListener {
+
+        private final QueueItemViewHolder mHolder;
+
+        RowListener(QueueItemViewHolder holder) {
+            mHolder = holder;
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = mHolder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            MediaQueueItem item = mProvider.getItem(position);
+            if (LogUtils.DEBUG) {
+                LOGD(TAG, item.getItemId() + "");
+            }
+            v.setTag(R.string.queue_tag_item, item);
+            onItemViewClick(v);
+        }
+
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            if (MotionEventCompat.getActionMasked(event) == MotionEvent.ACTION_DOWN) {
+                mDragStartListener.onStartDrag(mHolder);
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public void onViewRecycled(QueueItemViewHolder holder) {
+        mImageLoader.recycle(holder.mImageView);
+    }
+
     @Override
     public int getItemCount() {
         return QueueDataProvider.getInstance().getCount();
@@ -208,6 +308,11 @@ public class QueueListAdapter
         public ImageView mDragHandle;
         public TextView mTitleView;
         public TextView mDescriptionView;
+        // what the row shows, so that binding the same again leaves the views alone; the queue
+        // items are rebuilt on every status update, so the text is compared by value
+        private String mTitle;
+        private String mDescription;
+        private ControlStatus mStatus;
 
         @Override
         public void onItemSelected() {
@@ -217,6 +322,8 @@ public class QueueListAdapter
         @Override
         public void onItemClear() {
             itemView.setBackgroundColor(0);
+            // the background has to be set again on the next bind
+            mStatus = null;
         }
 
         private enum ControlStatus {
@@ -238,16 +345,45 @@ public class QueueListAdapter
             mStopUpcoming = (ImageButton) itemView.findViewById(R.id.stop_upcoming);
         }
 
+        private void setTitle(String title) {
+            if (!TextUtils.equals(title, mTitle)) {
+                mTitle = title;
+                mTitleView.setText(title);
+            }
+        }
+
+        private void setDescription(String description) {
+            if (!TextUtils.equals(description, mDescription)) {
+                mDescription = description;
+                mDescriptionView.setText(description);
+            }
+        }
+
+        /**
+         * Styles the row for {@code status}, unless it already is.
+         */
         private void updateControlsStatus(ControlStatus status) {
+            if (status == mStatus) {
+                return;
+            }
+            // the first bind applies the caption appearance; it is the same in every state
+            if (mStatus == null) {
+                mDescriptionView.setTextAppearance(mContext,
+                        R.style.Base_TextAppearance_AppCompat_Caption);
+            }
+            boolean wasUpcoming = mStatus == ControlStatus.UPCOMING;
+            boolean upcoming = status == ControlStatus.UPCOMING;
+            if (mStatus == null || wasUpcoming != upcoming) {
+                mTitleView.setTextAppearance(mContext, upcoming
+                        ? R.style.Base_TextAppearance_AppCompat_Subhead_Inverse
+                        : R.style.Base_TextAppearance_AppCompat_Subhead);
+                mTitleView.setTextColor(upcoming ? sWhiteColor : sBlackColor);
+                mDescriptionView.setTextColor(upcoming ? sYellowColor : sGreyColor);
+            }
+            mStatus = status;
             int bgResId = R.drawable.bg_item_normal_state;
-            mTitleView.setTextAppearance(mContext, R.style.Base_TextAppearance_AppCompat_Subhead);
-            mDescriptionView.setTextAppearance(mContext,
-                    R.style.Base_TextAppearance_AppCompat_Caption);
-            mTitleView.setTextColor(sBlackColor);
-            mDescriptionView.setTextColor(sGreyColor);
             switch (status) {
                 case CURRENT:
-                    bgResId = R.drawable.bg_item_normal_state;
                     mControls.setVisibility(View.VISIBLE);
                     mPlayPause.setVisibility(View.VISIBLE);
                     mUpcomingControls.setVisibility(View.GONE);
@@ -259,15 +395,6 @@ public class QueueListAdapter
                     mUpcomingControls.setVisibility(View.VISIBLE);
                     mDragHandle.setImageResource(sDragHandlerLightResource);
                     bgResId = R.drawable.bg_item_upcoming_state;
-                    mTitleView.setTextAppearance(mContext,
-                            R.style.TextAppearance_AppCompat_Small_Inverse);
-                    mTitleView.setTextAppearance(mTitleView.getContext(),
-                            R.style.Base_TextAppearance_AppCompat_Subhead_Inverse);
-                    mDescriptionView.setTextAppearance(mContext,
-                            R.style.Base_TextAppearance_AppCompat_Caption);
-                    mTitleView.setTextColor(sWhiteColor);
-                    mDescriptionView.setTextColor(sYellowColor);
-                    mDescriptionView.setText(R.string.ccl_mini_upnext);
                     break;
                 default:
                     mControls.setVisibility(View.GONE);
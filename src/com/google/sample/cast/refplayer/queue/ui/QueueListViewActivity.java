@@ -16,18 +16,21 @@
 
 package com.google.sample.cast.refplayer.queue.ui;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+
 import com.google.android.gms.cast.MediaQueueItem;
 import com.google.android.libraries.cast.companionlibrary.cast.VideoCastManager;
 import com.google.android.libraries.cast.companionlibrary.cast.callbacks.VideoCastConsumerImpl;
 import com.google.sample.cast.refplayer.R;
 import com.google.sample.cast.refplayer.queue.QueueDataProvider;
 import com.google.sample.cast.refplayer.settings.CastPreference;
+import com.google.sample.cast.refplayer.utils.CoalescingDispatcher;
+import com.google.sample.cast.refplayer.utils.LogUtils;
 
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -44,12 +47,15 @@ public class QueueListViewActivity extends AppCompatActivity {
     private VideoCastConsumerImpl mCastConsumer;
     private VideoCastManager mCastManager;
     private View mEmpty;
+    // whether the latest queue update left the queue empty, shown once per frame
+    private boolean mQueueEmpty;
+    private CoalescingDispatcher mEmptyDispatcher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.queue_activity);
-        Log.d(TAG, "onCreate() was called");
+        LOGD(TAG, "onCreate() was called");
 
         if (savedInstanceState == null) {
             getSupportFragmentManager().beginTransaction()
@@ -58,20 +64,24 @@ public class QueueListViewActivity extends AppCompatActivity {
         }
         setupActionBar();
         mCastManager = VideoCastManager.getInstance();
+        mEmptyDispatcher = new CoalescingDispatcher(new CoalescingDispatcher.Listener() {
+            @Override
+            public void onDispatch(int flags) {
+                mEmpty.setVisibility(mQueueEmpty ? View.VISIBLE : View.GONE);
+            }
+        });
         mCastConsumer = new VideoCastConsumerImpl() {
             @Override
             public void onMediaQueueUpdated(List<MediaQueueItem> queueItems, MediaQueueItem item,
                     int repeatMode, boolean shuffle) {
-                if (queueItems == null || queueItems.isEmpty()) {
-                    mEmpty.setVisibility(View.VISIBLE);
-                } else {
-                    mEmpty.setVisibility(View.GONE);
-                }
+                mQueueEmpty = queueItems == null || queueItems.isEmpty();
+                mEmptyDispatcher.post(0);
             }
 
             @Override
             public void onDisconnected() {
-                mEmpty.setVisibility(View.VISIBLE);
+                mQueueEmpty = true;
+                mEmptyDispatcher.post(0);
             }
 
         };
@@ -89,6 +99,10 @@ public class QueueListViewActivity extends AppCompatActivity {
 
     @Override
     protected void onPause() {
+        if (LogUtils.DEBUG) {
+            LOGD(TAG, "Queue updates: " + QueueDataProvider.getInstance().getDispatcher()
+                    + "; empty view updates: " + mEmptyDispatcher);
+        }
         mCastManager.decrementUiCounter();
         mCastManager.removeVideoCastConsumer(mCastConsumer);
         super.onPause();
@@ -16,6 +16,9 @@
 
 package com.google.sample.cast.refplayer.queue.ui;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGE;
+
 import com.google.android.gms.cast.MediaQueueItem;
 import com.google.android.libraries.cast.companionlibrary.cast.VideoCastManager;
 import com.google.android.libraries.cast.companionlibrary.cast.exceptions.CastException;
@@ -25,6 +28,7 @@ import com.google.android.libraries.cast.companionlibrary.utils.Utils;
 import com.google.sample.cast.refplayer.CastApplication;
 import com.google.sample.cast.refplayer.R;
 import com.google.sample.cast.refplayer.queue.QueueDataProvider;
+import com.google.sample.cast.refplayer.utils.LogUtils;
 
 import android.os.Bundle;
 import android.support.annotation.Nullable;
@@ -32,7 +36,6 @@ import android.support.v4.app.Fragment;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.helper.ItemTouchHelper;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -84,11 +87,17 @@ public class QueueListViewFragment extends Fragment  implements
             public void onItemViewClicked(View v) {
                 switch(v.getId()) {
                     case R.id.container:
-                        Log.d(TAG, "onItemViewClicked() container " + v.getTag(R.string.queue_tag_item));
+                        if (LogUtils.DEBUG) {
+                            LOGD(TAG, "onItemViewClicked() container "
+                                    + v.getTag(R.string.queue_tag_item));
+                        }
                         onContainerClicked(v);
                         break;
                     case R.id.play_pause:
-                        Log.d(TAG, "onItemViewClicked() play-pause " + v.getTag(R.string.queue_tag_item));
+                        if (LogUtils.DEBUG) {
+                            LOGD(TAG, "onItemViewClicked() play-pause "
+                                    + v.getTag(R.string.queue_tag_item));
+                        }
                         onPlayPauseClicked(v);
                         break;
                     case R.id.play_upcoming:
@@ -110,7 +119,7 @@ public class QueueListViewFragment extends Fragment  implements
         try {
             mCastManager.togglePlayback();
         } catch (CastException | TransientNetworkDisconnectionException |NoConnectionException e) {
-            Log.e(TAG, "Failed to toggle playback status");
+            LOGE(TAG, "Failed to toggle playback status");
         }
     }
 
@@ -118,7 +127,9 @@ public class QueueListViewFragment extends Fragment  implements
         MediaQueueItem item = (MediaQueueItem) view.getTag(R.string.queue_tag_item);
         try {
             if (mProvider.isQueueDetached()) {
-                Log.d(TAG, "Is detached: itemId = " + item.getItemId());
+                if (LogUtils.DEBUG) {
+                    LOGD(TAG, "Is detached: itemId = " + item.getItemId());
+                }
 
                 int currentPosition = mProvider.getPositionByItemId(item.getItemId());
                 MediaQueueItem[] items = Utils.rebuildQueue(mProvider.getItems());
@@ -138,7 +149,7 @@ public class QueueListViewFragment extends Fragment  implements
                 }
             }
         } catch (TransientNetworkDisconnectionException | NoConnectionException e) {
-            Log.e(TAG, "Failed to start playback of the new item");
+            LOGE(TAG, "Failed to start playback of the new item");
         }
     }
 
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.settings;
+
+import com.google.sample.cast.refplayer.R;
+import com.google.sample.cast.refplayer.browser.CatalogPager;
+import com.google.sample.cast.refplayer.images.ImageLoader;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * A debug screen that shows the cache hit rates and the timing histograms of the
+ * {@link ImageLoader}, followed by how long the catalog took to show its first row, see
+ * {@link CatalogPager#getFirstRowTimes()}. The same report can be obtained from a connected
+ * device with {@code adb shell dumpsys activity com.google.sample.cast.refplayer/.settings.ImageStatsActivity}
+ * while this screen is open.
+ */
+public class ImageStatsActivity extends Activity {
+
+    private TextView mStatsView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.image_stats_activity);
+        mStatsView = (TextView) findViewById(R.id.image_stats);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.image_stats, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_refresh) {
+            refresh();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        dump(writer);
+    }
+
+    private void refresh() {
+        StringWriter report = new StringWriter();
+        dump(new PrintWriter(report));
+        mStatsView.setText(report.toString());
+    }
+
+    private void dump(PrintWriter writer) {
+        ImageLoader.getInstance(this).dump(writer);
+        writer.println("Catalog:");
+        CatalogPager.getFirstRowTimes().dump("  ", writer);
+        writer.flush();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Collapses a burst of events into at most one dispatch per display frame. Every event carries a
+ * set of flags; the flags of the events posted before a frame are merged and handed to the
+ * {@link Listener} once, at the start of that frame, so it sees them together with whatever
+ * state the last of them left behind. Before Jelly Bean, which has no {@link Choreographer}, a
+ * dispatch is instead delayed by the length of a frame.
+ * <p>
+ * Must be used on the main thread.
+ */
+public class CoalescingDispatcher {
+
+    private static final long FRAME_INTERVAL_MS = 16;
+
+    private final Listener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+    private Choreographer.FrameCallback mFrameCallback;
+    private int mPendingFlags;
+    private boolean mScheduled;
+    private int mPostCount;
+    private int mDispatchCount;
+
+    public CoalescingDispatcher(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Posts an event; {@code flags} are merged with those of the events that are already waiting
+     * for the next frame.
+     */
+    public void post(int flags) {
+        mPostCount++;
+        mPendingFlags |= flags;
+        if (mScheduled) {
+            return;
+        }
+        mScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            mHandler.postDelayed(mDispatchRunnable, FRAME_INTERVAL_MS);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    dispatch();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    private void dispatch() {
+        int flags = mPendingFlags;
+        mPendingFlags = 0;
+        mScheduled = false;
+        mDispatchCount++;
+        mListener.onDispatch(flags);
+    }
+
+    /**
+     * Returns the number of events posted so far.
+     */
+    public int getPostCount() {
+        return mPostCount;
+    }
+
+    /**
+     * Returns the number of times the listener was called so far.
+     */
+    public int getDispatchCount() {
+        return mDispatchCount;
+    }
+
+    /**
+     * Returns the number of events that were merged into another one instead of being dispatched
+     * on their own.
+     */
+    public int getMergedCount() {
+        return mPostCount - mDispatchCount - (mScheduled ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return mPostCount + " events, " + mDispatchCount + " dispatches, " + getMergedCount()
+                + " merged";
+    }
+
+    /**
+     * Receives the merged events.
+     */
+    public interface Listener {
+
+        /**
+         * Called once per frame in which events were posted, with the union of their flags.
+         */
+        void onDispatch(int flags);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.utils;
+
+import com.google.sample.cast.refplayer.BuildConfig;
+
+import android.util.Log;
+
+/**
+ * The logging methods of the application. Debug messages are only logged in debug builds;
+ * warnings and errors always are.
+ * <p>
+ * {@link #DEBUG} is {@code false} in release builds, where it is a compile time constant, so the
+ * compiler leaves a block guarded by it out of those builds altogether. Debug messages that are
+ * built from arguments should be guarded that way, so that release builds do not format them:
+ * <pre>
+ * if (LogUtils.DEBUG) {
+ *     LOGD(TAG, "Loaded " + count + " items");
+ * }
+ * </pre>
+ */
+public class LogUtils {
+
+    /**
+     * Whether debug messages are logged.
+     */
+    public static final boolean DEBUG = BuildConfig.DEBUG;
+
+    /*
+     * Making sure public utility methods remain static
+     */
+    private LogUtils() {
+    }
+
+    public static void LOGD(String tag, String message) {
+        if (DEBUG) {
+            Log.d(tag, message);
+        }
+    }
+
+    public static void LOGD(String tag, String message, Throwable cause) {
+        if (DEBUG) {
+            Log.d(tag, message, cause);
+        }
+    }
+
+    public static void LOGW(String tag, String message) {
+        Log.w(tag, message);
+    }
+
+    public static void LOGW(String tag, String message, Throwable cause) {
+        Log.w(tag, message, cause);
+    }
+
+    public static void LOGE(String tag, String message) {
+        Log.e(tag, message);
+    }
+
+    public static void LOGE(String tag, String message, Throwable cause) {
+        Log.e(tag, message, cause);
+    }
+}
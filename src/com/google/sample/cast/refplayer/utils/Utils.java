@@ -16,6 +16,9 @@
 
 package com.google.sample.cast.refplayer.utils;
 
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGE;
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGW;
+
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.gms.cast.MediaQueueItem;
 import com.google.android.libraries.cast.companionlibrary.cast.VideoCastManager;
@@ -34,7 +37,6 @@ import android.content.res.Configuration;
 import android.graphics.Point;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.PopupMenu;
-import android.util.Log;
 import android.view.Display;
 import android.view.MenuItem;
 import android.view.View;
@@ -184,7 +186,7 @@ public class Utils {
         final VideoCastManager castManager = VideoCastManager.getInstance();
         final QueueDataProvider provider = QueueDataProvider.getInstance();
         if (!castManager.isConnected()) {
-            Log.w(TAG, "showQueuePopup(): not connected to a cast device");
+            LOGW(TAG, "showQueuePopup(): not connected to a cast device");
             return;
         }
         PopupMenu popup = new PopupMenu(context, view);
@@ -255,7 +257,7 @@ public class Utils {
                     }
                 } catch (NoConnectionException |
                         TransientNetworkDisconnectionException e) {
-                    Log.e(TAG, "Failed to add item to queue or play remotely", e);
+                    LOGE(TAG, "Failed to add item to queue or play remotely", e);
                 }
                 if (toastMessage != null) {
                     Toast.makeText(context, toastMessage, Toast.LENGTH_SHORT).show();
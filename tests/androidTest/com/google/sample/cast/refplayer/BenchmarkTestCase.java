@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+
+/**
+ * The base class of the benchmarks that run on a device. A benchmark reports its results as named
+ * values; once the test has run they are sent to the instrumentation as a status bundle, so that
+ * {@code adb shell am instrument -r -w} prints them next to the test results.
+ * <p>
+ * Benchmarks measure what the application does on a real runtime: time, allocations and heap.
+ * Whatever they assert has to hold on any device, so timings are reported but never asserted.
+ */
+public abstract class BenchmarkTestCase extends InstrumentationTestCase {
+
+    /**
+     * The status code of the bundles that hold the results of a benchmark.
+     */
+    public static final int STATUS_RESULTS = 2;
+
+    private Bundle mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResults = new Bundle();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (!mResults.isEmpty()) {
+            mResults.putString("benchmark", getClass().getSimpleName() + "#" + getName());
+            getInstrumentation().sendStatus(STATUS_RESULTS, mResults);
+        }
+        super.tearDown();
+    }
+
+    protected Context getTargetContext() {
+        return getInstrumentation().getTargetContext();
+    }
+
+    /**
+     * Adds a result to the report of the current test.
+     */
+    protected void report(String name, long value) {
+        mResults.putLong(name, value);
+    }
+
+    /**
+     * Returns the number of bytes in use on the Java heap once the garbage has been collected.
+     */
+    protected static long getUsedHeap() {
+        collectGarbage();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Collects as much garbage as the runtime lets go of, finalizers included.
+     */
+    protected static void collectGarbage() {
+        for (int i = 0; i < 3; i++) {
+            Runtime.getRuntime().gc();
+            System.runFinalization();
+        }
+    }
+
+    /**
+     * Starts counting the objects the calling thread allocates, from 0.
+     */
+    @SuppressWarnings("deprecation")
+    protected static void startAllocationCounting() {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+    }
+
+    /**
+     * Returns the number of objects the calling thread allocated since the counting started. The
+     * counting goes on.
+     */
+    @SuppressWarnings("deprecation")
+    protected static int getAllocationCount() {
+        return Debug.getThreadAllocCount();
+    }
+
+    /**
+     * Returns the number of bytes the calling thread allocated since the counting started. The
+     * counting goes on.
+     */
+    @SuppressWarnings("deprecation")
+    protected static int getAllocationSize() {
+        return Debug.getThreadAllocSize();
+    }
+
+    @SuppressWarnings("deprecation")
+    protected static void stopAllocationCounting() {
+        Debug.stopAllocCounting();
+    }
+
+    /**
+     * Follows the heap in use while a benchmark runs, and keeps its peak. The heap is sampled
+     * every millisecond on a thread of its own, so short lived peaks can be missed; the result is
+     * a lower bound that is good enough to compare two ways of doing the same work.
+     */
+    protected static class HeapSampler implements Runnable {
+
+        private final long mBaseline;
+        private volatile boolean mRunning = true;
+        private volatile long mPeak;
+        private final Thread mThread;
+
+        /**
+         * Starts sampling, relative to the heap in use once the garbage has been collected.
+         */
+        public HeapSampler() {
+            mBaseline = getUsedHeap();
+            mThread = new Thread(this, "HeapSampler");
+            mThread.start();
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (mRunning) {
+                mPeak = Math.max(mPeak, runtime.totalMemory() - runtime.freeMemory());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stops sampling and returns the peak of the heap in use above the baseline, in bytes.
+         */
+        public long stop() throws InterruptedException {
+            mRunning = false;
+            mThread.join();
+            Runtime runtime = Runtime.getRuntime();
+            long peak = Math.max(mPeak, runtime.totalMemory() - runtime.freeMemory());
+            return Math.max(0, peak - mBaseline);
+        }
+    }
+}
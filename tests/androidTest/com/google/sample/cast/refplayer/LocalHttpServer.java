@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal HTTP server on the loopback interface, which stands in for the servers of the
+ * catalog and of the images in benchmarks. It answers {@code GET} requests for the paths it was
+ * given a response for, one connection at a time per thread, and closes every connection after
+ * its response.
+ */
+public class LocalHttpServer {
+
+    private final ServerSocket mSocket;
+    private final Map<String, Response> mResponses = new ConcurrentHashMap<>();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private volatile Map<String, String> mLastHeaders;
+
+    /**
+     * A canned response. Headers are sent as they are given, followed by the
+     * {@code Content-Length} of the body.
+     */
+    public static class Response {
+
+        private final byte[] mBody;
+        private final Map<String, String> mHeaders = new HashMap<>();
+
+        public Response(byte[] body) {
+            mBody = body;
+        }
+
+        public Response setHeader(String name, String value) {
+            mHeaders.put(name, value);
+            return this;
+        }
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     */
+    public LocalHttpServer() throws IOException {
+        mSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "LocalHttpServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Serves {@code response} for {@code path} from now on, and returns the url of the path.
+     */
+    public String serve(String path, Response response) {
+        mResponses.put(path, response);
+        return getUrl(path);
+    }
+
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mSocket.getLocalPort() + path;
+    }
+
+    /**
+     * Returns the number of requests received so far, whether or not they were answered.
+     */
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns the number of bytes of the responses sent so far, headers included.
+     */
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * Returns the headers of the last request, with their names in lower case.
+     */
+    public Map<String, String> getLastHeaders() {
+        return mLastHeaders;
+    }
+
+    public void shutdown() {
+        try {
+            mSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = mSocket.accept();
+            } catch (IOException e) {
+                // closed by shutdown()
+                return;
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handle(socket);
+                    } catch (IOException e) {
+                        // the client went away
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // ignore
+                        }
+                    }
+                }
+            }, "LocalHttpServer connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        String requestLine = readLine(in);
+        if (requestLine == null) {
+            return;
+        }
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        mLastHeaders = headers;
+        mRequestCount.incrementAndGet();
+
+        String[] parts = requestLine.split(" ");
+        Response response = parts.length > 1 ? mResponses.get(parts[1]) : null;
+        StringBuilder head = new StringBuilder();
+        byte[] body;
+        if (response == null) {
+            head.append("HTTP/1.1 404 Not Found\r\n");
+            body = new byte[0];
+        } else {
+            head.append("HTTP/1.1 200 OK\r\n");
+            for (Map.Entry<String, String> header : response.mHeaders.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue())
+                        .append("\r\n");
+            }
+            body = response.mBody;
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("Connection: close\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes("US-ASCII");
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        try {
+            out.write(headBytes);
+            if (!"HEAD".equals(parts[0])) {
+                out.write(body);
+            }
+            out.flush();
+            mBytesSent.addAndGet(headBytes.length + body.length);
+        } catch (SocketException e) {
+            // the client closed the connection before reading everything
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import com.google.sample.cast.refplayer.BenchmarkTestCase;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts what binding 10k rows allocates through the real {@link VideoListAdapter}, on the main
+ * thread and into real rows: the first time each row is bound, bound again into the holder that
+ * showed it, and bound into a holder that showed another row, as a fling back over the list
+ * does. The rows have no thumbnail, so that no image is fetched; the image benchmarks cover the
+ * thumbnails.
+ */
+public class BindAllocationBenchmark extends BenchmarkTestCase {
+
+    private static final int ROW_COUNT = 10000;
+    // about the rows of a screen, plus those that RecyclerView keeps aside
+    private static final int HOLDER_COUNT = 12;
+
+    private VideoListAdapter mAdapter;
+    private VideoListAdapter.ViewHolder[] mHolders;
+
+    public void testBind() throws Exception {
+        final long[] results = new long[6];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                setUpAdapter(getTargetContext());
+                bind(0, results, 0);
+                bind(0, results, 2);
+                bind(1, results, 4);
+            }
+        });
+
+        report("rows", ROW_COUNT);
+        report("first_bind_allocations", results[0]);
+        report("first_bind_bytes", results[1]);
+        report("same_holder_allocations", results[2]);
+        report("same_holder_bytes", results[3]);
+        report("other_holder_allocations", results[4]);
+        report("other_holder_bytes", results[5]);
+        // a row bound again into the holder that shows it leaves its views alone
+        assertTrue(results[2] <= results[0]);
+    }
+
+    private void setUpAdapter(Context context) {
+        mAdapter = new VideoListAdapter(context, new VideoListAdapter.ItemClickListener() {
+            @Override
+            public void itemClicked(View v, VideoItem item, int position) {
+            }
+        });
+        FrameLayout parent = new FrameLayout(context);
+        mHolders = new VideoListAdapter.ViewHolder[HOLDER_COUNT];
+        for (int i = 0; i < HOLDER_COUNT; i++) {
+            mHolders[i] = mAdapter.onCreateViewHolder(parent, 0);
+        }
+        mAdapter.setData(newCatalog(ROW_COUNT));
+    }
+
+    /**
+     * Binds every row, row {@code i} into holder {@code i + shift}, and stores the allocations
+     * and the bytes allocated at {@code results[index]} and {@code results[index + 1]}.
+     */
+    private void bind(int shift, long[] results, int index) {
+        startAllocationCounting();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            mAdapter.onBindViewHolder(mHolders[(i + shift) % HOLDER_COUNT], i);
+        }
+        results[index] = getAllocationCount();
+        results[index + 1] = getAllocationSize();
+        stopAllocationCounting();
+    }
+
+    private static List<VideoItem> newCatalog(int size) {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        int prefix = prefixes.intern("http://videos.example.com/");
+        List<VideoItem> videos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            videos.add(new VideoItem(prefixes, "Video " + i, "Studio " + i % 10, "Description",
+                    60, prefix, "video" + i + ".mp4", "video/mp4", UrlPrefixTable.NO_PREFIX,
+                    null, null, null, null));
+        }
+        return videos;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import com.google.android.gms.cast.MediaInfo;
+import com.google.sample.cast.refplayer.BenchmarkTestCase;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap that the catalog retains once it has been built, for 10k, 50k and 100k
+ * videos, in each of the forms it has been kept in: a {@link MediaInfo} for every video, as the
+ * catalog used to be built, a {@link VideoItem} for every video, and the mapped
+ * {@link CatalogSnapshot}.
+ * <p>
+ * A form whose projected size, from the 10k run, would take more than half of the heap the
+ * application may grow to is not built at the larger sizes; it is reported as skipped instead.
+ */
+public class CatalogHeapBenchmark extends BenchmarkTestCase {
+
+    private static final int[] VIDEO_COUNTS = {10000, 50000, 100000};
+    private static final int VIDEOS_PER_CATEGORY = 1000;
+
+    private File mCatalogFile;
+    private File mSnapshotFile;
+    private long mMediaInfoBytesPerVideo;
+    private long mItemBytesPerVideo;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File dir = getTargetContext().getCacheDir();
+        mCatalogFile = new File(dir, "benchmark-catalog.json");
+        mSnapshotFile = new File(dir, "benchmark-catalog.snapshot");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCatalogFile.delete();
+        mSnapshotFile.delete();
+        super.tearDown();
+    }
+
+    public void testRetainedHeap() throws Exception {
+        for (int videoCount : VIDEO_COUNTS) {
+            SyntheticCatalog.write(mCatalogFile, videoCount / VIDEOS_PER_CATEGORY,
+                    VIDEOS_PER_CATEGORY);
+            long mediaInfoBytes = measureMediaInfos(videoCount);
+            long itemBytes = measureItems(videoCount);
+            measureSnapshot(videoCount);
+            if (mediaInfoBytes > 0 && itemBytes > 0) {
+                assertTrue(itemBytes < mediaInfoBytes);
+            }
+        }
+    }
+
+    /**
+     * Returns the heap retained by a {@link MediaInfo} for each video, or 0 if it was skipped.
+     */
+    private long measureMediaInfos(int videoCount) throws IOException {
+        if (!fits(mMediaInfoBytesPerVideo, videoCount)) {
+            report("media_info_" + videoCount + "_skipped", 1);
+            return 0;
+        }
+        long before = getUsedHeap();
+        List<VideoItem> items = parse();
+        List<MediaInfo> infos = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            infos.add(items.get(i).toMediaInfo());
+        }
+        // a MediaInfo holds no reference to the item it was built from, so what is left is what
+        // the eager catalog held
+        items = null;
+        long retained = getUsedHeap() - before;
+        assertEquals(videoCount, infos.size());
+        mMediaInfoBytesPerVideo = retained / videoCount;
+        report("media_info_" + videoCount + "_retained_bytes", retained);
+        return retained;
+    }
+
+    /**
+     * Returns the heap retained by a {@link VideoItem} for each video, or 0 if it was skipped.
+     */
+    private long measureItems(int videoCount) throws IOException {
+        if (!fits(mItemBytesPerVideo, videoCount)) {
+            report("video_item_" + videoCount + "_skipped", 1);
+            return 0;
+        }
+        long before = getUsedHeap();
+        List<VideoItem> items = parse();
+        long retained = getUsedHeap() - before;
+        assertEquals(videoCount, items.size());
+        mItemBytesPerVideo = retained / videoCount;
+        report("video_item_" + videoCount + "_retained_bytes", retained);
+
+        CatalogSnapshot.write(mSnapshotFile, items);
+        return retained;
+    }
+
+    private void measureSnapshot(int videoCount) {
+        if (!mSnapshotFile.exists()) {
+            return;
+        }
+        long before = getUsedHeap();
+        CatalogSnapshot snapshot = CatalogSnapshot.open(mSnapshotFile);
+        // the snapshot keeps a few objects on the heap, fewer than the collector moves around
+        long retained = Math.max(0, getUsedHeap() - before);
+        assertNotNull(snapshot);
+        assertEquals(videoCount, snapshot.size());
+        report("snapshot_" + videoCount + "_retained_bytes", retained);
+        report("snapshot_" + videoCount + "_file_bytes", mSnapshotFile.length());
+        mSnapshotFile.delete();
+    }
+
+    private List<VideoItem> parse() throws IOException {
+        final List<VideoItem> items = new ArrayList<>();
+        InputStream in = new BufferedInputStream(new FileInputStream(mCatalogFile));
+        try {
+            VideoProvider.streamMedia(in, new VideoProvider.OnVideoParsedListener() {
+                @Override
+                public void onVideoParsed(VideoItem video) {
+                    items.add(video);
+                }
+            });
+        } finally {
+            in.close();
+        }
+        return items;
+    }
+
+    private static boolean fits(long bytesPerVideo, int videoCount) {
+        return bytesPerVideo * videoCount < Runtime.getRuntime().maxMemory() / 2;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import com.google.sample.cast.refplayer.BenchmarkTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the streaming catalog parser with the json tree it replaced: the time it takes to
+ * build the catalog, and the peak of the heap while it does.
+ */
+public class CatalogParseBenchmark extends BenchmarkTestCase {
+
+    // a quarter of the production catalog, so that the json tree fits in the heap of any device
+    private static final int CATEGORY_COUNT = 10;
+    private static final int VIDEOS_PER_CATEGORY = 1000;
+    private static final int RUNS = 3;
+
+    public void testStreamingParser() throws Exception {
+        byte[] catalog = SyntheticCatalog.build(CATEGORY_COUNT, VIDEOS_PER_CATEGORY);
+        int videoCount = CATEGORY_COUNT * VIDEOS_PER_CATEGORY;
+        long treeTime = Long.MAX_VALUE;
+        long treePeak = 0;
+        long streamTime = Long.MAX_VALUE;
+        long streamPeak = 0;
+        for (int run = 0; run < RUNS; run++) {
+            HeapSampler sampler = new HeapSampler();
+            long start = System.nanoTime();
+            List<VideoItem> tree = parseTree(catalog);
+            treeTime = Math.min(treeTime, System.nanoTime() - start);
+            treePeak = Math.max(treePeak, sampler.stop());
+
+            sampler = new HeapSampler();
+            start = System.nanoTime();
+            List<VideoItem> stream = parseStream(catalog);
+            streamTime = Math.min(streamTime, System.nanoTime() - start);
+            streamPeak = Math.max(streamPeak, sampler.stop());
+
+            assertEquals(videoCount, tree.size());
+            assertEquals(videoCount, stream.size());
+            for (int i = 0; i < videoCount; i++) {
+                assertEquals(tree.get(i).getContentId(), stream.get(i).getContentId());
+                assertEquals(tree.get(i).getTitle(), stream.get(i).getTitle());
+            }
+        }
+
+        report("videos", videoCount);
+        report("catalog_bytes", catalog.length);
+        report("tree_parse_ms", treeTime / 1000000);
+        report("tree_peak_heap_bytes", treePeak);
+        report("stream_parse_ms", streamTime / 1000000);
+        report("stream_peak_heap_bytes", streamPeak);
+        // the tree holds the whole document as a string, twice the size of its bytes, on top of
+        // the objects it is made of
+        assertTrue(streamPeak < treePeak);
+    }
+
+    private static List<VideoItem> parseTree(byte[] catalog) throws Exception {
+        return VideoProvider.buildMediaFromTree(
+                VideoProvider.readJson(new ByteArrayInputStream(catalog)));
+    }
+
+    private static List<VideoItem> parseStream(byte[] catalog) throws IOException {
+        final List<VideoItem> list = new ArrayList<>();
+        VideoProvider.streamMedia(new ByteArrayInputStream(catalog),
+                new VideoProvider.OnVideoParsedListener() {
+                    @Override
+                    public void onVideoParsed(VideoItem video) {
+                        list.add(video);
+                    }
+                });
+        return list;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import com.google.sample.cast.refplayer.BenchmarkTestCase;
+import com.google.sample.cast.refplayer.LocalHttpServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Fetches a catalog of a few megabytes from a {@link LocalHttpServer} through
+ * {@link CatalogTransport}, served as identity, gzip, deflate and in ISO-8859-1, and through the
+ * reader the catalog used to be fetched with: an ISO-8859-1 reader over a 1 KB buffer that
+ * appended every line to a string. Every body that the transport hands out must be the catalog,
+ * byte for byte.
+ * <p>
+ * The loopback interface is much faster than any real network, so the times mostly measure what
+ * the device spends decompressing and copying; the bytes on the wire are reported next to them.
+ */
+public class CatalogTransportBenchmark extends BenchmarkTestCase {
+
+    private static final int CATEGORY_COUNT = 10;
+    private static final int VIDEOS_PER_CATEGORY = 1000;
+    private static final int RUNS = 3;
+
+    private LocalHttpServer mServer;
+    private byte[] mCatalog;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new LocalHttpServer();
+        mCatalog = SyntheticCatalog.build(CATEGORY_COUNT, VIDEOS_PER_CATEGORY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testTransport() throws Exception {
+        report("catalog_bytes", mCatalog.length);
+        String identity = mServer.serve("/identity.json", new LocalHttpServer.Response(mCatalog)
+                .setHeader("Content-Type", "application/json; charset=utf-8"));
+        String gzip = mServer.serve("/gzip.json", new LocalHttpServer.Response(gzip(mCatalog))
+                .setHeader("Content-Type", "application/json; charset=utf-8")
+                .setHeader("Content-Encoding", "gzip"));
+        String deflate = mServer.serve("/deflate.json",
+                new LocalHttpServer.Response(deflate(mCatalog))
+                        .setHeader("Content-Type", "application/json; charset=utf-8")
+                        .setHeader("Content-Encoding", "deflate"));
+        // the synthetic catalog is plain ASCII, so its bytes are the same in ISO-8859-1
+        String latin1 = mServer.serve("/latin1.json", new LocalHttpServer.Response(mCatalog)
+                .setHeader("Content-Type", "application/json; charset=iso-8859-1"));
+
+        long identityBytes = measureTransport("identity", identity);
+        long gzipBytes = measureTransport("gzip", gzip);
+        measureTransport("deflate", deflate);
+        measureTransport("latin1", latin1);
+        measureLegacy(identity);
+
+        assertTrue(gzipBytes < identityBytes);
+    }
+
+    /**
+     * Fetches {@code url} through {@link CatalogTransport}, and returns the number of bytes that
+     * went over the wire for one fetch.
+     */
+    private long measureTransport(String name, String url) throws IOException {
+        long best = Long.MAX_VALUE;
+        long wireBytes = 0;
+        for (int run = 0; run < RUNS; run++) {
+            collectGarbage();
+            long sent = mServer.getBytesSent();
+            long start = System.nanoTime();
+            HttpURLConnection connection = CatalogTransport.openConnection(url);
+            byte[] body;
+            try {
+                assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+                body = readAll(CatalogTransport.getBody(connection));
+            } finally {
+                connection.disconnect();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            wireBytes = mServer.getBytesSent() - sent;
+            assertTrue(mServer.getLastHeaders().get("accept-encoding").contains("gzip"));
+            assertTrue(name, Arrays.equals(mCatalog, body));
+        }
+        report(name + "_fetch_ms", best / 1000000);
+        report(name + "_wire_bytes", wireBytes);
+        return wireBytes;
+    }
+
+    /**
+     * Fetches {@code url} the way the catalog used to be fetched, without the parse that
+     * followed.
+     */
+    private void measureLegacy(String url) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            collectGarbage();
+            long start = System.nanoTime();
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            String json;
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        connection.getInputStream(), "iso-8859-1"), 1024);
+                StringBuilder sb = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    sb.append(line);
+                }
+                reader.close();
+                json = sb.toString();
+            } finally {
+                connection.disconnect();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            assertEquals(mCatalog.length, json.length());
+        }
+        report("legacy_fetch_ms", best / 1000000);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = CatalogTransport.getBuffer();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeflaterOutputStream deflate = new DeflaterOutputStream(out);
+        deflate.write(data);
+        deflate.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import com.google.sample.cast.refplayer.BenchmarkTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+/**
+ * Measures how {@link ParallelCatalogParser} scales with its parallelism, from 1 up to the number
+ * of processors of the device, on a synthetic catalog of many categories. Every run must build
+ * the same list, in the same order, as the sequential run.
+ */
+public class ParallelParseBenchmark extends BenchmarkTestCase {
+
+    private static final int CATEGORY_COUNT = 16;
+    private static final int VIDEOS_PER_CATEGORY = 1000;
+    private static final int RUNS = 3;
+
+    public void testScaling() throws Exception {
+        byte[] catalog = SyntheticCatalog.build(CATEGORY_COUNT, VIDEOS_PER_CATEGORY);
+        int processors = Runtime.getRuntime().availableProcessors();
+        report("categories", CATEGORY_COUNT);
+        report("videos", CATEGORY_COUNT * VIDEOS_PER_CATEGORY);
+        report("processors", processors);
+
+        List<VideoItem> expected = null;
+        for (int parallelism = 1; parallelism <= processors; parallelism++) {
+            ParallelCatalogParser parser = new ParallelCatalogParser(parallelism);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                collectGarbage();
+                long start = System.nanoTime();
+                List<VideoItem> items = parser.parse(new ByteArrayInputStream(catalog));
+                best = Math.min(best, System.nanoTime() - start);
+                if (expected == null) {
+                    expected = items;
+                } else {
+                    assertSameCatalog(expected, items);
+                }
+            }
+            report("parse_ms_parallelism_" + parallelism, best / 1000000);
+        }
+        assertEquals(CATEGORY_COUNT * VIDEOS_PER_CATEGORY, expected.size());
+    }
+
+    private static void assertSameCatalog(List<VideoItem> expected, List<VideoItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getContentId(), actual.get(i).getContentId());
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Builds catalogs in the format of the feed that the application reads, of whatever size a
+ * benchmark needs. Every video has three sources, three variants of its artwork and a caption
+ * track, like those of the real feed.
+ */
+public final class SyntheticCatalog {
+
+    private SyntheticCatalog() {
+    }
+
+    /**
+     * Returns the UTF-8 bytes of a catalog of {@code categoryCount} categories of
+     * {@code videosPerCategory} videos each.
+     */
+    public static byte[] build(int categoryCount, int videosPerCategory) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            write(writer, categoryCount, videosPerCategory);
+            writer.close();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the same catalog as {@link #build(int, int)} to {@code file}, for catalogs too large
+     * to be held in memory next to what a benchmark measures.
+     */
+    public static void write(File file, int categoryCount, int videosPerCategory)
+            throws IOException {
+        Writer writer = new OutputStreamWriter(
+                new BufferedOutputStream(new FileOutputStream(file)), "UTF-8");
+        try {
+            write(writer, categoryCount, videosPerCategory);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void write(Writer writer, int categoryCount, int videosPerCategory)
+            throws IOException {
+        writer.write("{\"categories\":[");
+        for (int c = 0; c < categoryCount; c++) {
+            if (c > 0) {
+                writer.write(',');
+            }
+            String base = "http://commondatastorage.example.com/category" + c + "/";
+            writer.write("{\"name\":\"Category " + c + "\","
+                    + "\"hls\":\"" + base + "hls/\","
+                    + "\"dash\":\"" + base + "dash/\","
+                    + "\"mp4\":\"" + base + "mp4/\","
+                    + "\"images\":\"" + base + "images/\","
+                    + "\"tracks\":\"" + base + "tracks/\","
+                    + "\"videos\":[");
+            for (int v = 0; v < videosPerCategory; v++) {
+                if (v > 0) {
+                    writer.write(',');
+                }
+                writeVideo(writer, c * videosPerCategory + v);
+            }
+            writer.write("]}");
+        }
+        writer.write("]}");
+    }
+
+    private static void writeVideo(Writer writer, int id) throws IOException {
+        String name = "video" + id;
+        writer.write("{\"subtitle\":\"Subtitle of video " + id + ", a few words long\","
+                + "\"sources\":["
+                + "{\"type\":\"hls\",\"mime\":\"application/x-mpegurl\",\"url\":\"" + name
+                + ".m3u8\"},"
+                + "{\"type\":\"dash\",\"mime\":\"application/dash+xml\",\"url\":\"" + name
+                + ".mpd\"},"
+                + "{\"type\":\"mp4\",\"mime\":\"video/mp4\",\"url\":\"" + name + ".mp4\"}],"
+                + "\"image-480x270\":\"" + name + "-480x270.jpg\","
+                + "\"image-780x1200\":\"" + name + "-780x1200.jpg\","
+                + "\"image-1280x720\":\"" + name + "-1280x720.jpg\","
+                + "\"title\":\"Video " + id + "\","
+                + "\"studio\":\"Studio " + (id % 17) + "\","
+                + "\"duration\":" + (60 + id % 3600) + ","
+                + "\"tracks\":[{\"id\":1,\"type\":\"text\",\"subtype\":\"captions\","
+                + "\"contentId\":\"" + name + "-en.vtt\",\"name\":\"English\","
+                + "\"language\":\"en-US\"}]}");
+    }
+}
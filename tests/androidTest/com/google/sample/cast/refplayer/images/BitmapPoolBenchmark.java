@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.images;
+
+import com.google.sample.cast.refplayer.BenchmarkTestCase;
+import com.google.sample.cast.refplayer.R;
+
+import android.annotation.TargetApi;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Debug;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Decodes the thumbnails of a fling through the rows of the browse list, keeping a screen of rows
+ * at a time, once with the bitmaps of the rows that scroll off handed back to the
+ * {@link BitmapPool} as the adapters do, and once with them recycled as they used to be. Reports
+ * the hits and misses of the pool, the time the decodes take and, from Marshmallow on, the
+ * number of garbage collections each fling caused.
+ */
+public class BitmapPoolBenchmark extends BenchmarkTestCase {
+
+    private static final int ROWS = 500;
+    private static final int IMAGE_COUNT = 8;
+
+    private ImageLoader mLoader;
+    private ByteBuffer[] mImages;
+    private int mWidth;
+    private int mHeight;
+    private int mWindow;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLoader = ImageLoader.getInstance(getTargetContext());
+        mImages = new ByteBuffer[IMAGE_COUNT];
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            mImages[i] = ByteBuffer.wrap(SyntheticImage.newJpeg(SyntheticImage.THUMBNAIL_WIDTH,
+                    SyntheticImage.THUMBNAIL_HEIGHT, i));
+        }
+        Resources resources = getTargetContext().getResources();
+        mWidth = resources.getDimensionPixelSize(R.dimen.browse_row_image_width);
+        mHeight = resources.getDimensionPixelSize(R.dimen.browse_row_image_height);
+        mWindow = resources.getDisplayMetrics().heightPixels / mHeight + 1;
+    }
+
+    public void testFling() {
+        report("rows", ROWS);
+        report("rows_per_screen", mWindow);
+        int pooledMisses = fling("pooled", true);
+        int recycledMisses = fling("recycled", false);
+        if (BitmapPool.isSupported()) {
+            assertTrue(pooledMisses < recycledMisses);
+        }
+    }
+
+    /**
+     * Flings through {@link #ROWS} rows and returns the number of times the pool had no bitmap
+     * to decode into.
+     */
+    private int fling(String name, boolean returnToPool) {
+        BitmapPool pool = mLoader.getPool();
+        pool.trimToSize(0);
+        collectGarbage();
+        int hits = pool.hitCount();
+        int misses = pool.missCount();
+        long gcCount = getGcCount();
+        ArrayDeque<Bitmap> screen = new ArrayDeque<>(mWindow + 1);
+        long start = System.nanoTime();
+        for (int row = 0; row < ROWS; row++) {
+            screen.addLast(mLoader.decode(mImages[row % IMAGE_COUNT], mWidth, mHeight));
+            if (screen.size() > mWindow) {
+                release(screen.removeFirst(), returnToPool);
+            }
+        }
+        long time = System.nanoTime() - start;
+        gcCount = getGcCount() - gcCount;
+        while (!screen.isEmpty()) {
+            release(screen.removeFirst(), returnToPool);
+        }
+        pool.trimToSize(0);
+
+        misses = pool.missCount() - misses;
+        report(name + "_pool_hits", pool.hitCount() - hits);
+        report(name + "_pool_misses", misses);
+        report(name + "_decode_ms", time / 1000000);
+        if (gcCount >= 0) {
+            report(name + "_gc_count", gcCount);
+        }
+        return misses;
+    }
+
+    private void release(Bitmap bitmap, boolean returnToPool) {
+        if (returnToPool) {
+            // what the reference counting of the loader does once no view shows the bitmap
+            mLoader.getPool().put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Returns the number of garbage collections the runtime ran so far, or -1 where the runtime
+     * does not tell.
+     */
+    private static long getGcCount() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        return getGcCountM();
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static long getGcCountM() {
+        String count = Debug.getRuntimeStat("art.gc.gc-count");
+        return count == null ? -1 : Long.parseLong(count);
+    }
+}
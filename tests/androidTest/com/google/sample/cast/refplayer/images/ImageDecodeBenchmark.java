@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.images;
+
+import com.google.sample.cast.refplayer.BenchmarkTestCase;
+import com.google.sample.cast.refplayer.R;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares what it takes to decode the thumbnails of one screen of rows at full resolution, as
+ * they used to be decoded, with decoding them at the size of the row as the {@link ImageLoader}
+ * does: the time it takes and the bytes the bitmaps hold. The thumbnails are jpegs of the size
+ * of the {@code image-480x270} variant of the catalog, and a screen holds as many rows as fit in
+ * the height of the display if every row were only as tall as its thumbnail.
+ */
+public class ImageDecodeBenchmark extends BenchmarkTestCase {
+
+    private static final int RUNS = 3;
+
+    private ImageLoader mLoader;
+    private byte[] mJpeg;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLoader = ImageLoader.getInstance(getTargetContext());
+        mJpeg = SyntheticImage.newJpeg(SyntheticImage.THUMBNAIL_WIDTH,
+                SyntheticImage.THUMBNAIL_HEIGHT, 42);
+    }
+
+    public void testBrowseScreen() {
+        Resources resources = getTargetContext().getResources();
+        measure("browse", resources.getDimensionPixelSize(R.dimen.browse_row_image_width),
+                resources.getDimensionPixelSize(R.dimen.browse_row_image_height));
+    }
+
+    public void testQueueScreen() {
+        int size = getTargetContext().getResources().getDimensionPixelSize(
+                R.dimen.queue_row_image_size);
+        measure("queue", size, size);
+    }
+
+    private void measure(String name, int width, int height) {
+        int rows = getTargetContext().getResources().getDisplayMetrics().heightPixels / height
+                + 1;
+        long fullTime = Long.MAX_VALUE;
+        long fullBytes = 0;
+        long targetTime = Long.MAX_VALUE;
+        long targetBytes = 0;
+        for (int run = 0; run < RUNS; run++) {
+            List<Bitmap> screen = new ArrayList<>(rows);
+            collectGarbage();
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                screen.add(BitmapFactory.decodeByteArray(mJpeg, 0, mJpeg.length));
+            }
+            fullTime = Math.min(fullTime, System.nanoTime() - start);
+            fullBytes = getByteCount(screen);
+            recycle(screen);
+
+            ByteBuffer data = ByteBuffer.wrap(mJpeg);
+            collectGarbage();
+            start = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                screen.add(mLoader.decode(data, width, height));
+            }
+            targetTime = Math.min(targetTime, System.nanoTime() - start);
+            targetBytes = getByteCount(screen);
+            for (Bitmap bitmap : screen) {
+                assertTrue(bitmap.getWidth() <= width && bitmap.getHeight() <= height);
+            }
+            recycle(screen);
+        }
+
+        report("rows_per_screen", rows);
+        report("row_width_px", width);
+        report("row_height_px", height);
+        report(name + "_full_decode_ms", fullTime / 1000000);
+        report(name + "_full_bytes", fullBytes);
+        report(name + "_target_decode_ms", targetTime / 1000000);
+        report(name + "_target_bytes", targetBytes);
+        assertTrue(targetBytes < fullBytes);
+    }
+
+    private static long getByteCount(List<Bitmap> bitmaps) {
+        long bytes = 0;
+        for (Bitmap bitmap : bitmaps) {
+            bytes += BitmapPool.getByteCount(bitmap);
+        }
+        return bytes;
+    }
+
+    private static void recycle(List<Bitmap> bitmaps) {
+        for (Bitmap bitmap : bitmaps) {
+            bitmap.recycle();
+        }
+        bitmaps.clear();
+    }
+}
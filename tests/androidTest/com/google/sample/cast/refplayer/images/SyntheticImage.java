@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.images;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Builds the images that the benchmarks of the image pipeline decode.
+ */
+public final class SyntheticImage {
+
+    /**
+     * The width of the {@code image-480x270} variant of the catalog, which the rows show.
+     */
+    public static final int THUMBNAIL_WIDTH = 480;
+    public static final int THUMBNAIL_HEIGHT = 270;
+
+    private SyntheticImage() {
+    }
+
+    /**
+     * Returns a jpeg of noise of the given size, which is about as hard to decode as a photograph
+     * of the same size. The same seed gives the same image.
+     */
+    public static byte[] newJpeg(int width, int height, long seed) {
+        int[] pixels = new int[width * height];
+        Random random = new Random(seed);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.utils;
+
+import com.google.sample.cast.refplayer.BenchmarkTestCase;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a {@link CoalescingDispatcher} a simulated stream of 50 cast callbacks per second on the
+ * main thread, against the real frame clock of the device, and checks what it merged and what it
+ * dispatched. The stream comes either in bursts, the way a queue load delivers its player
+ * status, preload status and queue updates, or evenly spaced.
+ */
+public class CoalescingDispatcherTest extends BenchmarkTestCase {
+
+    private static final int EVENTS_PER_SECOND = 50;
+    private static final int SECONDS = 4;
+    private static final int EVENT_COUNT = EVENTS_PER_SECOND * SECONDS;
+    private static final int BURST_SIZE = 5;
+    private static final int BURST_COUNT = EVENT_COUNT / BURST_SIZE;
+    // the flags of the events of a burst, one bit per callback
+    private static final int ALL_FLAGS = (1 << BURST_SIZE) - 1;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private CoalescingDispatcher mDispatcher;
+    private final List<Integer> mDispatchedFlags = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mDispatcher = new CoalescingDispatcher(new CoalescingDispatcher.Listener() {
+                    @Override
+                    public void onDispatch(int flags) {
+                        mDispatchedFlags.add(flags);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Bursts of {@link #BURST_SIZE} events, ten times a second. A burst is posted within one
+     * message of the main thread, so no frame can split it: every burst is dispatched at most
+     * once, with the flags of all of its events.
+     */
+    public void testBursts() throws Exception {
+        long interval = 1000 / (EVENTS_PER_SECOND / BURST_SIZE);
+        long start = SystemClock.uptimeMillis() + interval;
+        for (int burst = 0; burst < BURST_COUNT; burst++) {
+            mHandler.postAtTime(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < BURST_SIZE; i++) {
+                        mDispatcher.post(1 << i);
+                    }
+                }
+            }, start + burst * interval);
+        }
+        awaitStream(start + BURST_COUNT * interval);
+
+        assertCounts("bursts");
+        assertTrue(mDispatcher.getDispatchCount() <= BURST_COUNT);
+        assertTrue(mDispatcher.getMergedCount() >= EVENT_COUNT - BURST_COUNT);
+        for (int flags : mDispatchedFlags) {
+            assertEquals(ALL_FLAGS, flags);
+        }
+    }
+
+    /**
+     * One event every 20 ms, which is longer than a frame at 60 Hz: the dispatcher must never
+     * hold an event back for more than one frame, so few of them can be merged.
+     */
+    public void testEvenStream() throws Exception {
+        long interval = 1000 / EVENTS_PER_SECOND;
+        long start = SystemClock.uptimeMillis() + interval;
+        for (int event = 0; event < EVENT_COUNT; event++) {
+            mHandler.postAtTime(new Runnable() {
+                @Override
+                public void run() {
+                    mDispatcher.post(1);
+                }
+            }, start + event * interval);
+        }
+        awaitStream(start + EVENT_COUNT * interval);
+
+        assertCounts("even");
+        for (int flags : mDispatchedFlags) {
+            assertEquals(1, flags);
+        }
+    }
+
+    /**
+     * Waits until the main thread has gone past {@code end} and a few more frames, so that the
+     * last events have been dispatched.
+     */
+    private void awaitStream(long end) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mHandler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, end + 200);
+        assertTrue(done.await(SECONDS + 10, TimeUnit.SECONDS));
+        getInstrumentation().waitForIdleSync();
+    }
+
+    private void assertCounts(String name) {
+        final int[] counts = new int[3];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                counts[0] = mDispatcher.getPostCount();
+                counts[1] = mDispatcher.getDispatchCount();
+                counts[2] = mDispatcher.getMergedCount();
+            }
+        });
+        report(name + "_posted", counts[0]);
+        report(name + "_dispatched", counts[1]);
+        report(name + "_merged", counts[2]);
+        assertEquals(EVENT_COUNT, counts[0]);
+        assertEquals(counts[1], mDispatchedFlags.size());
+        // nothing is left waiting for a frame
+        assertEquals(counts[0], counts[1] + counts[2]);
+        assertTrue(counts[1] > 0);
+    }
+}
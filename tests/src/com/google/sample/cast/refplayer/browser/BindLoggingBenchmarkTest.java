@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import static com.google.sample.cast.refplayer.utils.LogUtils.LOGD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.sample.cast.refplayer.images.ImageVariantSelector;
+import com.google.sample.cast.refplayer.utils.LogUtils;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares what binding a row costs with the debug message it used to log on every bind, built
+ * whether or not anything read it, against the same message behind the {@link LogUtils#DEBUG}
+ * guard. Only the allocations are compared, since the timings depend on the machine: in a
+ * release build the guarded bind allocates nothing, in a debug build it allocates no more than
+ * the unguarded one.
+ */
+public class BindLoggingBenchmarkTest {
+
+    private static final String TAG = "BindLoggingBenchmark";
+
+    private static final int ROW_COUNT = 1000;
+    private static final int WARM_UP_PASSES = 200;
+    private static final int MEASURED_PASSES = 500;
+    private static final int IMAGE_WIDTH = 320;
+    private static final int IMAGE_HEIGHT = 180;
+
+    private static final int MODE_UNGUARDED = 0;
+    private static final int MODE_GUARDED = 1;
+    private static final int MODE_COUNT = 2;
+
+    // where a logged message goes, so that building it cannot be optimized away
+    private static String sLastMessage;
+
+    @Test
+    public void guardedLoggingAllocatesOnlyInDebugBuilds() {
+        com.sun.management.ThreadMXBean threads = getThreadMXBean();
+        VideoRowCache cache = newRowCache();
+        long threadId = Thread.currentThread().getId();
+
+        long[] bytes = new long[MODE_COUNT];
+        int checksum = 0;
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            for (int pass = 0; pass < WARM_UP_PASSES; pass++) {
+                checksum += bindAll(cache, mode);
+            }
+            // reading the counter may allocate itself
+            long startBytes = threads.getThreadAllocatedBytes(threadId);
+            long baseline = threads.getThreadAllocatedBytes(threadId) - startBytes;
+            startBytes = threads.getThreadAllocatedBytes(threadId);
+            for (int pass = 0; pass < MEASURED_PASSES; pass++) {
+                checksum += bindAll(cache, mode);
+            }
+            bytes[mode] = threads.getThreadAllocatedBytes(threadId) - startBytes - baseline;
+        }
+
+        assertTrue(checksum != 0);
+        assertTrue(bytes[MODE_UNGUARDED] > 0);
+        if (LogUtils.DEBUG) {
+            assertTrue(bytes[MODE_GUARDED] <= bytes[MODE_UNGUARDED]);
+        } else {
+            assertEquals(0, bytes[MODE_GUARDED]);
+        }
+    }
+
+    /**
+     * Binds every row once, as {@link VideoListAdapter} does, and logs the bind in the way
+     * {@code mode} tells.
+     */
+    private static int bindAll(VideoRowCache cache, int mode) {
+        int checksum = 0;
+        for (int position = 0; position < ROW_COUNT; position++) {
+            switch (mode) {
+                case MODE_UNGUARDED:
+                    log("onBindViewHolder() for position: " + position);
+                    break;
+                default:
+                    if (LogUtils.DEBUG) {
+                        log("onBindViewHolder() for position: " + position);
+                    }
+            }
+            checksum += cache.getTitle(position).length();
+            checksum += cache.getStudio(position).length();
+            checksum += cache.getImageKey(position).length();
+        }
+        return checksum;
+    }
+
+    private static void log(String message) {
+        sLastMessage = message;
+        LOGD(TAG, message);
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static VideoRowCache newRowCache() {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        int contentPrefix = prefixes.intern("http://videos.example.com/");
+        int imagePrefix = prefixes.intern("http://images.example.com/");
+        List<VideoItem> videos = new ArrayList<>(ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            videos.add(new VideoItem(prefixes, "Video " + i, "Studio " + (i % 7),
+                    "Description " + i, 60 + i, contentPrefix, "video" + i + ".mp4",
+                    "video/mp4", imagePrefix, "video" + i + ".jpg", "video" + i + "-large.jpg",
+                    null, null));
+        }
+        VideoRowCache cache = new VideoRowCache(new ImageVariantSelector(false), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        cache.reset(videos);
+        return cache;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.content.ContextWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/**
+ * Checks the conditional requests of {@link CatalogCache} against a local server, and that an
+ * invalidated copy is fetched again unconditionally.
+ */
+public class CatalogCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final byte[] BODY = "{\"categories\":[]}".getBytes();
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private HttpServer mServer;
+    private String mUrl;
+    // the If-None-Match header of the last request
+    private volatile String mLastIfNoneMatch;
+    private CatalogCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/catalog.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mLastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (ETAG.equals(mLastIfNoneMatch)) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, BODY.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(BODY);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/catalog.json";
+        final File cacheDir = mFolder.newFolder("cache");
+        mCache = new CatalogCache(new ContextWrapper(null) {
+            @Override
+            public File getCacheDir() {
+                return cacheDir;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void revalidatesWithTheStoredEtag() throws IOException {
+        assertTrue(mCache.refresh(mUrl));
+        assertNull(mLastIfNoneMatch);
+        assertTrue(mCache.hasCachedCopy(mUrl));
+
+        assertFalse(mCache.refresh(mUrl));
+        assertEquals(ETAG, mLastIfNoneMatch);
+        assertEquals(BODY.length, readAll(mCache.openCachedCopy()));
+    }
+
+    @Test
+    public void invalidatedCopyIsFetchedUnconditionally() throws IOException {
+        mCache.refresh(mUrl);
+        File snapshot = mCache.getSnapshotFile(mUrl);
+        assertTrue(snapshot.createNewFile());
+
+        mCache.invalidate();
+
+        assertFalse(mCache.hasCachedCopy(mUrl));
+        assertFalse(snapshot.exists());
+        assertTrue(mCache.refresh(mUrl));
+        assertNull(mLastIfNoneMatch);
+        assertEquals(BODY.length, readAll(mCache.openCachedCopy()));
+    }
+
+    private static int readAll(InputStream in) throws IOException {
+        try {
+            int count = 0;
+            while (in.read() != -1) {
+                count++;
+            }
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that {@link CatalogDiff} reports an item as changed when any variant of its artwork
+ * changed, since the variant a row shows depends on the size of the row.
+ */
+public class CatalogDiffTest {
+
+    @Test
+    public void findsNoChangeInTheSameArtwork() {
+        assertTrue(diff(newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480.jpg")),
+                newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480.jpg"))).isEmpty());
+    }
+
+    @Test
+    public void findsAChangedVariantBehindTheSameThumbnail() {
+        assertFalse(diff(newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480.jpg")),
+                newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480-v2.jpg"))).isEmpty());
+    }
+
+    @Test
+    public void findsAResizedVariant() {
+        assertFalse(diff(newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480.jpg")),
+                newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(640, 360, "a-480.jpg"))).isEmpty());
+    }
+
+    @Test
+    public void findsAnAddedVariant() {
+        assertFalse(diff(newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480.jpg")),
+                newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480.jpg"),
+                        new VideoItem.Image(1280, 720, "a-1280.jpg"))).isEmpty());
+    }
+
+    @Test
+    public void findsAMovedImagePrefix() {
+        assertFalse(diff(newItem("http://images.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480.jpg")),
+                newItem("http://cdn.example.com/", "a.jpg",
+                        new VideoItem.Image(480, 270, "a-480.jpg"))).isEmpty());
+    }
+
+    @Test
+    public void comparesTheThumbnailWithoutVariants() {
+        assertTrue(diff(newItem("http://images.example.com/", "a.jpg"),
+                newItem("http://images.example.com/", "a.jpg")).isEmpty());
+        assertFalse(diff(newItem("http://images.example.com/", "a.jpg"),
+                newItem("http://images.example.com/", "b.jpg")).isEmpty());
+    }
+
+    private static CatalogDiff diff(VideoItem oldItem, VideoItem newItem) {
+        return CatalogDiff.compute(Collections.singletonList(oldItem),
+                Collections.singletonList(newItem));
+    }
+
+    /**
+     * Returns the same video every time, but for its artwork. Every item gets a table of
+     * prefixes of its own, as items of two fetches of the catalog do.
+     */
+    private static VideoItem newItem(String imagePrefix, String thumbnail,
+            VideoItem.Image... images) {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        int contentPrefix = prefixes.intern("http://videos.example.com/");
+        List<VideoItem.Image> variants = images.length == 0 ? null : Arrays.asList(images);
+        return new VideoItem(prefixes, "Video", "Studio", "Description", 60, contentPrefix,
+                "video.mp4", "video/mp4", prefixes.intern(imagePrefix), thumbnail, null,
+                variants, null);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that {@link CatalogPager} shows a catalog by appending pages to it, rather than by
+ * handing a new list over for every page.
+ */
+public class CatalogPagerTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int PREFETCH_DISTANCE = 3;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void showsTheFirstPageOfTheCatalogItself() {
+        RecordingListener listener = new RecordingListener();
+        CatalogPager pager = new CatalogPager(PAGE_SIZE, PREFETCH_DISTANCE, listener);
+        List<VideoItem> catalog = newCatalog(35);
+
+        pager.setCatalog(catalog);
+
+        assertSame(catalog, listener.mItems);
+        assertEquals(1, listener.mChangeCount);
+        assertEquals(PAGE_SIZE, listener.mCount);
+    }
+
+    @Test
+    public void appendsAPageWithinThePrefetchDistance() {
+        RecordingListener listener = new RecordingListener();
+        CatalogPager pager = new CatalogPager(PAGE_SIZE, PREFETCH_DISTANCE, listener);
+        pager.setCatalog(newCatalog(35));
+
+        pager.onScrolled(PAGE_SIZE - 2 - PREFETCH_DISTANCE);
+        assertEquals(PAGE_SIZE, listener.mCount);
+
+        pager.onScrolled(PAGE_SIZE - 1 - PREFETCH_DISTANCE);
+        assertEquals(2 * PAGE_SIZE, listener.mCount);
+        assertEquals(1, listener.mPageCount);
+
+        pager.onScrolled(3 * PAGE_SIZE - 1);
+        pager.onScrolled(34);
+        pager.onScrolled(34);
+        assertEquals(35, listener.mCount);
+        assertEquals(1, listener.mChangeCount);
+    }
+
+    @Test
+    public void diffsARefreshedCatalogOverTheRowsShown() {
+        RecordingListener listener = new RecordingListener();
+        CatalogPager pager = new CatalogPager(PAGE_SIZE, PREFETCH_DISTANCE, listener);
+        pager.setCatalog(newCatalog(35));
+        pager.onScrolled(PAGE_SIZE - 1);
+        List<VideoItem> refreshed = newCatalog(15);
+
+        pager.setCatalog(refreshed);
+
+        assertSame(refreshed, listener.mItems);
+        assertEquals(2, listener.mChangeCount);
+        assertEquals(15, listener.mCount);
+    }
+
+    @Test
+    public void handsTheRowsShownOverToASnapshotWithoutADiff() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        CatalogPager pager = new CatalogPager(PAGE_SIZE, PREFETCH_DISTANCE, listener);
+        List<VideoItem> catalog = newCatalog(35);
+        pager.setCatalog(catalog);
+        pager.onScrolled(PAGE_SIZE - 1);
+        File file = new File(mFolder.getRoot(), "catalog.snapshot");
+        CatalogSnapshot.write(file, catalog);
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+        assertNotNull(snapshot);
+
+        pager.replaceCatalog(catalog, snapshot);
+        // the loader then delivers the snapshot as its result
+        pager.setCatalog(snapshot);
+
+        assertSame(snapshot, listener.mReplacement);
+        assertEquals(1, listener.mChangeCount);
+        assertEquals(2 * PAGE_SIZE, listener.mCount);
+
+        pager.onScrolled(2 * PAGE_SIZE - 1);
+        assertEquals(3 * PAGE_SIZE, listener.mCount);
+        assertEquals(1, listener.mChangeCount);
+    }
+
+    @Test
+    public void ignoresASnapshotOfAnotherCatalog() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        CatalogPager pager = new CatalogPager(PAGE_SIZE, PREFETCH_DISTANCE, listener);
+        List<VideoItem> catalog = newCatalog(35);
+        pager.setCatalog(catalog);
+        List<VideoItem> other = newCatalog(35);
+        File file = new File(mFolder.getRoot(), "catalog.snapshot");
+        CatalogSnapshot.write(file, other);
+
+        pager.replaceCatalog(other, CatalogSnapshot.open(file));
+
+        assertSame(catalog, listener.mItems);
+        assertNull(listener.mReplacement);
+        assertEquals(1, listener.mChangeCount);
+    }
+
+    @Test
+    public void recordsTheTimeToTheFirstRowOnce() {
+        int before = CatalogPager.getFirstRowTimes().getCount();
+        CatalogPager pager = new CatalogPager(PAGE_SIZE, PREFETCH_DISTANCE,
+                new RecordingListener());
+
+        pager.setCatalog(new ArrayList<VideoItem>());
+        assertEquals(before, CatalogPager.getFirstRowTimes().getCount());
+        pager.setCatalog(newCatalog(35));
+        pager.onScrolled(PAGE_SIZE - 1);
+
+        assertEquals(before + 1, CatalogPager.getFirstRowTimes().getCount());
+    }
+
+    private static List<VideoItem> newCatalog(int size) {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        int prefix = prefixes.intern("http://videos.example.com/");
+        List<VideoItem> videos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            videos.add(new VideoItem(prefixes, "Video " + i, "Studio", "Description", 60, prefix,
+                    "video" + i + ".mp4", "video/mp4", prefix, "video" + i + ".jpg",
+                    "video" + i + "-large.jpg", null, null));
+        }
+        return videos;
+    }
+
+    private static class RecordingListener implements CatalogPager.OnPageLoadedListener {
+
+        private List<VideoItem> mItems;
+        private List<VideoItem> mReplacement;
+        private int mCount;
+        private int mChangeCount;
+        private int mPageCount;
+
+        @Override
+        public void onCatalogChanged(List<VideoItem> items, int count) {
+            mItems = items;
+            mCount = count;
+            mChangeCount++;
+        }
+
+        @Override
+        public void onPageLoaded(int count) {
+            mCount = count;
+            mPageCount++;
+        }
+
+        @Override
+        public void onCatalogReplaced(List<VideoItem> items) {
+            mReplacement = items;
+        }
+    }
+}
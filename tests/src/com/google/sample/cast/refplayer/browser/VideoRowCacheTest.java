@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.sample.cast.refplayer.browser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.sample.cast.refplayer.images.ImageLoader;
+import com.google.sample.cast.refplayer.images.ImageVariantSelector;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that binding a row of the video list a second time reads everything back from the
+ * {@link VideoRowCache} without allocating, for a list held in memory and for a mapped snapshot.
+ */
+public class VideoRowCacheTest {
+
+    private static final int ROW_COUNT = 10000;
+    private static final int IMAGE_WIDTH = 320;
+    private static final int IMAGE_HEIGHT = 180;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void bindsRowsOfAListWithoutAllocating() {
+        List<VideoItem> videos = newCatalog(ROW_COUNT);
+        VideoRowCache cache = new VideoRowCache(new ImageVariantSelector(false), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        cache.reset(videos);
+
+        checkRows(cache, videos);
+        assertNoAllocation(cache, ROW_COUNT);
+    }
+
+    @Test
+    public void bindsRowsOfASnapshotWithoutAllocating() throws Exception {
+        File file = new File(mFolder.getRoot(), "catalog.snapshot");
+        CatalogSnapshot.write(file, newCatalog(ROW_COUNT));
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+        assertNotNull(snapshot);
+        VideoRowCache cache = new VideoRowCache(new ImageVariantSelector(false), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        cache.reset(snapshot);
+
+        checkRows(cache, snapshot);
+        assertNoAllocation(cache, ROW_COUNT);
+    }
+
+    @Test
+    public void picksTheVariantForTheNetwork() {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        List<VideoItem.Image> images = Arrays.asList(new VideoItem.Image(160, 90, "small.jpg"),
+                new VideoItem.Image(1280, 720, "large.jpg"));
+        List<VideoItem> videos = Arrays.asList(new VideoItem(prefixes, "Title", "Studio",
+                "Description", 60, UrlPrefixTable.NO_PREFIX, "video.mp4", "video/mp4",
+                prefixes.intern("http://images.example.com/"), "small.jpg", "large.jpg", images,
+                null));
+        VideoRowCache metered = new VideoRowCache(new ImageVariantSelector(true), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        metered.reset(videos);
+        VideoRowCache unmetered = new VideoRowCache(new ImageVariantSelector(false), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        unmetered.reset(videos);
+
+        assertEquals("http://images.example.com/small.jpg", metered.getImageUrl(0));
+        assertEquals("http://images.example.com/large.jpg", unmetered.getImageUrl(0));
+    }
+
+    @Test
+    public void resetForgetsTheRowsOfThePreviousList() {
+        VideoRowCache cache = new VideoRowCache(new ImageVariantSelector(false), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        cache.reset(newCatalog(3));
+        cache.getTitle(1);
+        cache.getImageKey(1);
+        List<VideoItem> videos = newCatalog(2);
+        Collections.reverse(videos);
+
+        cache.reset(videos);
+
+        assertEquals("Video 0", cache.getTitle(1));
+        assertEquals("http://images.example.com/video0/medium.jpg@320x180",
+                cache.getImageKey(1));
+    }
+
+    @Test
+    public void keepsTheRowsAppendedToTheList() {
+        VideoRowCache cache = new VideoRowCache(new ImageVariantSelector(false), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        List<VideoItem> catalog = newCatalog(10);
+        List<VideoItem> videos = new ArrayList<>(catalog.subList(0, 4));
+        cache.reset(videos);
+        String key = cache.getImageKey(3);
+
+        videos.addAll(catalog.subList(4, 10));
+
+        assertSame(key, cache.getImageKey(3));
+        checkRows(cache, videos);
+        assertEquals(10, cache.clear());
+    }
+
+    @Test
+    public void clearCountsTheRowsThatWereBound() {
+        VideoRowCache cache = new VideoRowCache(new ImageVariantSelector(false), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        cache.reset(newCatalog(10));
+        cache.getImageKey(2);
+        cache.getImageKey(7);
+
+        assertEquals(2, cache.clear());
+        assertEquals(0, cache.clear());
+    }
+
+    @Test
+    public void rowWithoutArtworkHasNoKey() {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        VideoItem video = new VideoItem(prefixes, "Title", "Studio", "Description", 60,
+                UrlPrefixTable.NO_PREFIX, "http://example.com/video.mp4", "video/mp4",
+                UrlPrefixTable.NO_PREFIX, null, null, null, null);
+        VideoRowCache cache = new VideoRowCache(new ImageVariantSelector(false), IMAGE_WIDTH,
+                IMAGE_HEIGHT);
+        cache.reset(Arrays.asList(video));
+
+        assertNull(cache.getImageUrl(0));
+        assertNull(cache.getImageKey(0));
+    }
+
+    private static void checkRows(VideoRowCache cache, List<VideoItem> videos) {
+        ImageVariantSelector selector = new ImageVariantSelector(false);
+        for (int i = 0; i < videos.size(); i++) {
+            VideoItem video = videos.get(i);
+            String url = video.getImageUrl(selector, IMAGE_WIDTH, IMAGE_HEIGHT);
+            assertEquals(video.getTitle(), cache.getTitle(i));
+            assertEquals(video.getStudio(), cache.getStudio(i));
+            assertEquals(url, cache.getImageUrl(i));
+            assertEquals(ImageLoader.getCacheKey(url, IMAGE_WIDTH, IMAGE_HEIGHT),
+                    cache.getImageKey(i));
+            // a second bind hands back the very same strings
+            assertSame(cache.getTitle(i), cache.getTitle(i));
+            assertSame(cache.getImageKey(i), cache.getImageKey(i));
+        }
+    }
+
+    /**
+     * Binds every row again, as scrolling back over them does, and checks that the thread
+     * allocated nothing while doing so.
+     */
+    private static void assertNoAllocation(VideoRowCache cache, int rowCount) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        int checksum = 0;
+        // warm up so that neither class loading nor compilation shows up in the count
+        for (int pass = 0; pass < 5; pass++) {
+            checksum += bindAll(cache, rowCount);
+        }
+        // what reading the counter itself costs
+        long start = threads.getThreadAllocatedBytes(threadId);
+        long baseline = threads.getThreadAllocatedBytes(threadId) - start;
+
+        start = threads.getThreadAllocatedBytes(threadId);
+        checksum += bindAll(cache, rowCount);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - start - baseline;
+
+        assertEquals("bytes allocated by " + rowCount + " binds (checksum " + checksum + ")", 0,
+                allocated);
+    }
+
+    private static int bindAll(VideoRowCache cache, int rowCount) {
+        int checksum = 0;
+        for (int i = 0; i < rowCount; i++) {
+            checksum += cache.getTitle(i).length();
+            checksum += cache.getStudio(i).length();
+            checksum += cache.getImageUrl(i).length();
+            checksum += cache.getImageKey(i).length();
+        }
+        return checksum;
+    }
+
+    private static List<VideoItem> newCatalog(int count) {
+        UrlPrefixTable prefixes = new UrlPrefixTable();
+        int contentPrefix = prefixes.intern("http://videos.example.com/");
+        int imagePrefix = prefixes.intern("http://images.example.com/");
+        List<VideoItem> videos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<VideoItem.Image> images = Arrays.asList(
+                    new VideoItem.Image(160, 90, "video" + i + "/small.jpg"),
+                    new VideoItem.Image(320, 180, "video" + i + "/medium.jpg"),
+                    new VideoItem.Image(1280, 720, "video" + i + "/large.jpg"));
+            videos.add(new VideoItem(prefixes, "Video " + i, "Studio " + (i % 7),
+                    "Description " + i, 60 + i, contentPrefix, "video" + i + ".mp4",
+                    "video/mp4", imagePrefix, "video" + i + "/medium.jpg",
+                    "video" + i + "/large.jpg", images, null));
+        }
+        return videos;
+    }
+}